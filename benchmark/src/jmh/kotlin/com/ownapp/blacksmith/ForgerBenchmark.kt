@@ -0,0 +1,90 @@
+package com.ownapp.blacksmith
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.nio.ByteBuffer
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Throughput of the JNI [NativeForger] against the pure Kotlin [JvmForger], on strings and direct
+ * buffers of [length] characters.
+ *
+ * Run with `./gradlew :benchmark:jmh`, which builds `forger_ndk` for the host first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+open class ForgerBenchmark
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	@Param("16", "256", "4096")
+	var length = 0
+
+	private lateinit var text: String
+	private lateinit var forged: String
+
+	private lateinit var input: ByteBuffer
+	private lateinit var forgedInput: ByteBuffer
+	private lateinit var output: ByteBuffer
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Setup
+	//---------------------------------------------------------------------------------------------------*/
+	@Setup
+	fun setUp()
+	{
+		checkNotNull(System.getProperty(NativeForger.LIBRARY_PATH_PROPERTY)) { "Run through the jmh task, it builds the host library" }
+
+		// Mostly ASCII with some accents, the way stored tokens and ids look
+		val random = Random(length)
+		text = String(CharArray(length) { if(random.nextInt(8) == 0) 'à' + random.nextInt(16) else 'a' + random.nextInt(26) })
+		forged = JvmForger.forge(text)
+
+		check(NativeForger.forge(text) == forged) { "Backends disagree, the benchmark would compare different work" }
+
+		val bytes = text.toByteArray()
+		input = ByteBuffer.allocateDirect(bytes.size).put(bytes)
+		forgedInput = ByteBuffer.allocateDirect(bytes.size * 5)
+		output = ByteBuffer.allocateDirect(bytes.size * 5)
+
+		forgedInput.limit(JvmForger.forgeBuffer(input, 0, bytes.size, forgedInput, 0, forgedInput.capacity()))
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Benchmark
+	//---------------------------------------------------------------------------------------------------*/
+	@Benchmark
+	fun forgeNative(): String = NativeForger.forge(text)
+
+	@Benchmark
+	fun forgeJvm(): String = JvmForger.forge(text)
+
+	@Benchmark
+	fun unforgeNative(): String = NativeForger.unforge(forged)
+
+	@Benchmark
+	fun unforgeJvm(): String = JvmForger.unforge(forged)
+
+	@Benchmark
+	fun forgeBufferNative(): Int = NativeForger.forgeBuffer(input, 0, input.capacity(), output, 0, output.capacity())
+
+	@Benchmark
+	fun forgeBufferJvm(): Int = JvmForger.forgeBuffer(input, 0, input.capacity(), output, 0, output.capacity())
+
+	@Benchmark
+	fun unforgeBufferNative(): Int = NativeForger.unforgeBuffer(forgedInput, 0, forgedInput.limit(), output, 0, output.capacity())
+
+	@Benchmark
+	fun unforgeBufferJvm(): Int = JvmForger.unforgeBuffer(forgedInput, 0, forgedInput.limit(), output, 0, output.capacity())
+}
@@ -0,0 +1,504 @@
+package com.ownapp.core.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a `<Name>Impl` accessor for every interface annotated with
+ * `com.ownapp.core.annotation.Preferences`.
+ *
+ * The generated class resolves its SharedPreferences once, reads and writes every
+ * `PreferenceKey` with the matching primitive call and offers `edit(block)` to write several
+ * values with a single apply. Annotations are matched by name, so this module doesn't depend on
+ * the Android library that declares them.
+ */
+public final class PreferencesProcessor extends AbstractProcessor
+{
+    //**--------------------------------------------------------------------------------------------------
+    //*      Constant
+    //---------------------------------------------------------------------------------------------------*/
+    private static final String PREFERENCES = "com.ownapp.core.annotation.Preferences";
+    private static final String PREFERENCE_KEY = "com.ownapp.core.annotation.PreferenceKey";
+    private static final String INDENT = "    ";
+
+
+    //**--------------------------------------------------------------------------------------------------
+    //*      Class
+    //---------------------------------------------------------------------------------------------------*/
+    private static final class Property
+    {
+        final String name;
+        final String key;
+        final Type type;
+        final String defaultLiteral;
+        final ExecutableElement getter;
+        final boolean hasSetter;
+
+        Property(String name, String key, Type type, String defaultLiteral, ExecutableElement getter, boolean hasSetter)
+        {
+            this.name = name;
+            this.key = key;
+            this.type = type;
+            this.defaultLiteral = defaultLiteral;
+            this.getter = getter;
+            this.hasSetter = hasSetter;
+        }
+    }
+
+    private enum Type
+    {
+        INT("int", "Int"),
+        LONG("long", "Long"),
+        FLOAT("float", "Float"),
+        BOOLEAN("boolean", "Boolean"),
+        STRING("String", "String");
+
+        final String javaName;
+        final String accessor;
+
+        Type(String javaName, String accessor)
+        {
+            this.javaName = javaName;
+            this.accessor = accessor;
+        }
+    }
+
+
+    //**--------------------------------------------------------------------------------------------------
+    //*      Implement
+    //---------------------------------------------------------------------------------------------------*/
+    @Override
+    public Set<String> getSupportedAnnotationTypes()
+    {
+        return Collections.singleton(PREFERENCES);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment)
+    {
+        for(TypeElement annotation : annotations)
+        {
+            for(Element element : roundEnvironment.getElementsAnnotatedWith(annotation))
+            {
+                if(element.getKind() != ElementKind.INTERFACE)
+                {
+                    error(element, "@Preferences can only be put on an interface");
+                    continue;
+                }
+
+                generate((TypeElement) element);
+            }
+        }
+
+        return true;
+    }
+
+
+    //**--------------------------------------------------------------------------------------------------
+    //*      Private
+    //---------------------------------------------------------------------------------------------------*/
+    private void generate(TypeElement type)
+    {
+        List<Property> properties = new ArrayList<>();
+        boolean isValid = true;
+
+        for(Element member : type.getEnclosedElements())
+        {
+            if(member.getKind() != ElementKind.METHOD || !member.getModifiers().contains(Modifier.ABSTRACT))
+                continue;
+
+            ExecutableElement method = (ExecutableElement) member;
+            AnnotationMirror key = findAnnotation(method, PREFERENCE_KEY);
+
+            if(key != null)
+            {
+                Property property = toProperty(type, method, key);
+
+                if(property != null)
+                    properties.add(property);
+                else isValid = false;
+            }
+            else if(!isSetterOfKey(type, method))
+            {
+                error(method, "Every abstract member needs @PreferenceKey on its getter");
+                isValid = false;
+            }
+        }
+
+        if(!isValid)
+            return;
+
+        String packageName = ((PackageElement) enclosingPackage(type)).getQualifiedName().toString();
+        String interfaceName = type.getQualifiedName().toString();
+        String className = implementationName(type);
+        String fileName = packageName.isEmpty() ? className : packageName + "." + className;
+
+        try(Writer writer = processingEnv.getFiler().createSourceFile(fileName, type).openWriter())
+        {
+            writer.write(source(packageName, interfaceName, className, preferencesName(type), properties));
+        }
+        catch(IOException e)
+        {
+            error(type, "Cannot write " + fileName + ": " + e.getMessage());
+        }
+    }
+
+    private String source(String packageName, String interfaceName, String className, String preferencesName, List<Property> properties)
+    {
+        StringBuilder source = new StringBuilder();
+
+        if(!packageName.isEmpty())
+            source.append("package ").append(packageName).append(";\n\n");
+
+        source.append("import android.content.Context;\n")
+                .append("import android.content.SharedPreferences;\n\n")
+                .append("import kotlin.Unit;\n")
+                .append("import kotlin.jvm.functions.Function1;\n\n")
+                .append("/**\n * Generated from {@link ").append(interfaceName).append("}, do not edit.\n */\n")
+                .append("public final class ").append(className).append(" implements ").append(interfaceName).append("\n{\n");
+
+        source.append(INDENT).append("private final SharedPreferences preferences;\n\n")
+                .append(INDENT).append("public ").append(className).append("(Context context)\n")
+                .append(INDENT).append("{\n")
+                .append(INDENT).append(INDENT).append("this.preferences = context.getApplicationContext().getSharedPreferences(")
+                .append(preferencesName.isEmpty() ? "context.getPackageName() + \"_preferences\"" : literal(preferencesName))
+                .append(", Context.MODE_PRIVATE);\n")
+                .append(INDENT).append("}\n\n")
+                .append(INDENT).append("public SharedPreferences getPreferences()\n")
+                .append(INDENT).append("{\n")
+                .append(INDENT).append(INDENT).append("return preferences;\n")
+                .append(INDENT).append("}\n");
+
+        for(Property property : properties)
+        {
+            source.append("\n").append(INDENT).append("@Override\n");
+            appendGetter(source, INDENT, property);
+
+            if(property.hasSetter)
+            {
+                source.append("\n").append(INDENT).append("@Override\n")
+                        .append(INDENT).append("public void ").append(setterName(property)).append("(").append(property.type.javaName).append(" value)\n")
+                        .append(INDENT).append("{\n")
+                        .append(INDENT).append(INDENT).append("preferences.edit().put").append(property.type.accessor)
+                        .append("(").append(literal(property.key)).append(", value).apply();\n")
+                        .append(INDENT).append("}\n");
+            }
+        }
+
+        // Batched writes
+        source.append("\n").append(INDENT).append("/**\n")
+                .append(INDENT).append(" * Write every value set on the editor inside {@code block} with a single apply.\n")
+                .append(INDENT).append(" */\n")
+                .append(INDENT).append("public void edit(Function1<? super Editor, Unit> block)\n")
+                .append(INDENT).append("{\n")
+                .append(INDENT).append(INDENT).append("Editor editor = new Editor(preferences.edit());\n")
+                .append(INDENT).append(INDENT).append("block.invoke(editor);\n")
+                .append(INDENT).append(INDENT).append("editor.editor.apply();\n")
+                .append(INDENT).append("}\n\n");
+
+        String nested = INDENT + INDENT;
+
+        source.append(INDENT).append("public final class Editor\n")
+                .append(INDENT).append("{\n")
+                .append(nested).append("private final SharedPreferences.Editor editor;\n\n")
+                .append(nested).append("private Editor(SharedPreferences.Editor editor)\n")
+                .append(nested).append("{\n")
+                .append(nested).append(INDENT).append("this.editor = editor;\n")
+                .append(nested).append("}\n");
+
+        for(Property property : properties)
+        {
+            // Reads see the stored value, writes are pending until the block returns
+            source.append("\n");
+            appendGetter(source, nested, property);
+
+            source.append("\n").append(nested).append("public void ").append(setterName(property)).append("(").append(property.type.javaName).append(" value)\n")
+                    .append(nested).append("{\n")
+                    .append(nested).append(INDENT).append("editor.put").append(property.type.accessor)
+                    .append("(").append(literal(property.key)).append(", value);\n")
+                    .append(nested).append("}\n");
+        }
+
+        source.append(INDENT).append("}\n}\n");
+        return source.toString();
+    }
+
+    private void appendGetter(StringBuilder source, String indent, Property property)
+    {
+        source.append(indent).append("public ").append(property.type.javaName).append(" ").append(property.getter.getSimpleName()).append("()\n")
+                .append(indent).append("{\n");
+
+        if(property.type == Type.STRING)
+        {
+            // Kotlin declares it non null, a stored null falls back to the default
+            source.append(indent).append(INDENT).append("String value = preferences.getString(")
+                    .append(literal(property.key)).append(", ").append(property.defaultLiteral).append(");\n")
+                    .append(indent).append(INDENT).append("return value != null ? value : ").append(property.defaultLiteral).append(";\n");
+        }
+        else
+        {
+            source.append(indent).append(INDENT).append("return preferences.get").append(property.type.accessor)
+                    .append("(").append(literal(property.key)).append(", ").append(property.defaultLiteral).append(");\n");
+        }
+
+        source.append(indent).append("}\n");
+    }
+
+    private Property toProperty(TypeElement type, ExecutableElement getter, AnnotationMirror annotation)
+    {
+        String methodName = getter.getSimpleName().toString();
+        String name = propertyName(methodName);
+
+        if(name == null || !getter.getParameters().isEmpty())
+        {
+            error(getter, "@PreferenceKey must be put on a getter");
+            return null;
+        }
+
+        Type valueType = typeOf(getter.getReturnType());
+
+        if(valueType == null)
+        {
+            error(getter, "@PreferenceKey supports Int, Long, Float, Boolean and String only");
+            return null;
+        }
+
+        String key = stringValue(annotation, "value");
+        String defaultLiteral = defaultLiteral(valueType, stringValue(annotation, "defaultValue"));
+
+        if(key == null || key.isEmpty())
+        {
+            error(getter, "@PreferenceKey needs a key");
+            return null;
+        }
+
+        if(defaultLiteral == null)
+        {
+            error(getter, "Default value is not a valid " + valueType.accessor);
+            return null;
+        }
+
+        ExecutableElement setter = findSetter(type, name, getter.getReturnType());
+        return new Property(name, key, valueType, defaultLiteral, getter, setter != null);
+    }
+
+    private boolean isSetterOfKey(TypeElement type, ExecutableElement method)
+    {
+        String methodName = method.getSimpleName().toString();
+
+        if(!methodName.startsWith("set") || method.getParameters().size() != 1)
+            return false;
+
+        String name = methodName.substring(3);
+
+        for(Element member : type.getEnclosedElements())
+        {
+            if(member.getKind() == ElementKind.METHOD
+                    && findAnnotation(member, PREFERENCE_KEY) != null
+                    && name.equals(propertyName(member.getSimpleName().toString())))
+                return true;
+        }
+
+        return false;
+    }
+
+    private ExecutableElement findSetter(TypeElement type, String name, TypeMirror valueType)
+    {
+        for(Element member : type.getEnclosedElements())
+        {
+            if(member.getKind() != ElementKind.METHOD || !member.getSimpleName().contentEquals("set" + name))
+                continue;
+
+            ExecutableElement method = (ExecutableElement) member;
+
+            if(method.getParameters().size() == 1
+                    && processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), valueType))
+                return method;
+        }
+
+        return null;
+    }
+
+    private Type typeOf(TypeMirror type)
+    {
+        switch(type.getKind())
+        {
+            case INT: return Type.INT;
+            case LONG: return Type.LONG;
+            case FLOAT: return Type.FLOAT;
+            case BOOLEAN: return Type.BOOLEAN;
+            case DECLARED: return type.toString().equals("java.lang.String") ? Type.STRING : null;
+            default: return null;
+        }
+    }
+
+    /**
+     * @return Java literal of the default, null when it doesn't parse as the property's type
+     */
+    private String defaultLiteral(Type type, String value)
+    {
+        String trimmed = value == null ? "" : value.trim();
+
+        try
+        {
+            switch(type)
+            {
+                case INT: return trimmed.isEmpty() ? "0" : String.valueOf(Integer.parseInt(trimmed));
+                case LONG: return (trimmed.isEmpty() ? "0" : String.valueOf(Long.parseLong(trimmed))) + "L";
+                case FLOAT:
+                    if(trimmed.isEmpty())
+                        return "0f";
+
+                    float parsed = Float.parseFloat(trimmed);
+
+                    // "Infinity", "NaN" or "1e40" have no float literal to generate
+                    if(Float.isInfinite(parsed) || Float.isNaN(parsed))
+                        return null;
+
+                    return parsed + "f";
+                case BOOLEAN:
+                    if(trimmed.isEmpty() || trimmed.equals("false"))
+                        return "false";
+
+                    return trimmed.equals("true") ? "true" : null;
+                default: return literal(value == null ? "" : value);
+            }
+        }
+        catch(NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * getLaunchCount -> LaunchCount, isEnabled -> Enabled
+     */
+    private static String propertyName(String methodName)
+    {
+        if(methodName.startsWith("get") && methodName.length() > 3)
+            return methodName.substring(3);
+
+        if(methodName.startsWith("is") && methodName.length() > 2 && Character.isUpperCase(methodName.charAt(2)))
+            return methodName.substring(2);
+
+        return null;
+    }
+
+    /**
+     * Kotlin names the setter of `isEnabled` `setEnabled`, like Java beans do
+     */
+    private static String setterName(Property property)
+    {
+        return "set" + property.name;
+    }
+
+    private static String implementationName(TypeElement type)
+    {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        Element enclosing = type.getEnclosingElement();
+
+        // Nested interfaces are flattened, Outer.Inner -> Outer_InnerImpl
+        while(enclosing.getKind().isClass() || enclosing.getKind().isInterface())
+        {
+            name.insert(0, enclosing.getSimpleName() + "_");
+            enclosing = enclosing.getEnclosingElement();
+        }
+
+        return name.append("Impl").toString();
+    }
+
+    private static Element enclosingPackage(Element element)
+    {
+        Element enclosing = element;
+
+        while(enclosing.getKind() != ElementKind.PACKAGE)
+            enclosing = enclosing.getEnclosingElement();
+
+        return enclosing;
+    }
+
+    private String preferencesName(TypeElement type)
+    {
+        String name = stringValue(findAnnotation(type, PREFERENCES), "name");
+        return name == null ? "" : name;
+    }
+
+    private static AnnotationMirror findAnnotation(Element element, String name)
+    {
+        for(AnnotationMirror mirror : element.getAnnotationMirrors())
+        {
+            if(((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(name))
+                return mirror;
+        }
+
+        return null;
+    }
+
+    private static String stringValue(AnnotationMirror annotation, String name)
+    {
+        if(annotation == null)
+            return null;
+
+        for(Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet())
+        {
+            if(entry.getKey().getSimpleName().contentEquals(name))
+                return String.valueOf(entry.getValue().getValue());
+        }
+
+        return null;
+    }
+
+    private static String literal(String value)
+    {
+        StringBuilder literal = new StringBuilder("\"");
+
+        for(char c : value.toCharArray())
+        {
+            switch(c)
+            {
+                case '"': literal.append("\\\""); break;
+                case '\\': literal.append("\\\\"); break;
+                case '\n': literal.append("\\n"); break;
+                case '\r': literal.append("\\r"); break;
+                case '\t': literal.append("\\t"); break;
+                default:
+                    if(c < 0x20 || c > 0x7e)
+                        literal.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    else literal.append(c);
+            }
+        }
+
+        return literal.append('"').toString();
+    }
+
+    private void error(Element element, String message)
+    {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
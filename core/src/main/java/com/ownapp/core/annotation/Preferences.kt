@@ -0,0 +1,38 @@
+package com.ownapp.core.annotation
+
+/**
+ * Generates `<Name>Impl` for the annotated interface, a [android.content.SharedPreferences] accessor
+ * with primitive getters and setters for every [PreferenceKey] and a batched `edit { }`.
+ *
+ * ```
+ * @Preferences
+ * interface AppPreferences
+ * {
+ *     @get:PreferenceKey("launch_count", "0")
+ *     var launchCount: Int
+ *
+ *     @get:PreferenceKey("user_name")
+ *     val userName: String
+ * }
+ *
+ * val preferences = AppPreferencesImpl(context)
+ * preferences.edit { it.launchCount = it.launchCount + 1 }
+ * ```
+ *
+ * The implementation is generated by `core-compiler`, which the module declaring the interface needs
+ * as well: `kapt 'com.ownapp.util:core-compiler:<version of core>'`.
+ *
+ * @param name Preferences file, empty for the default shared preferences
+ */
+@Target(AnnotationTarget.CLASS)
+@Retention(AnnotationRetention.BINARY)
+annotation class Preferences(val name: String = "")
+
+/**
+ * Key of a [Preferences] property, put on its getter. Supports Int, Long, Float, Boolean and String.
+ *
+ * @param defaultValue Literal parsed at compile time, empty for `0`, `false` or an empty String
+ */
+@Target(AnnotationTarget.PROPERTY_GETTER, AnnotationTarget.FUNCTION)
+@Retention(AnnotationRetention.BINARY)
+annotation class PreferenceKey(val value: String, val defaultValue: String = "")
@@ -60,13 +60,17 @@ fun RecyclerView.smoothSnapToPosition(position: Int, snapMode: Int = LinearSmoot
  * @param visibleThreshold  The minimum number of items to have below your current scroll position before loading more.
  * @param resetLoadingState  Reset endless scroll listener when performing a new search
  * @param onScrolledToBottom    OnScrolledListener for RecyclerView scrolled
+ * @param predictiveLoad  Load early enough for a fling not to reach the end, see [RecyclerViewScrollCallback.Builder.predictive]
+ * @param onLeadTime  How early each page of a [predictiveLoad] arrived, see [OnLeadTimeListener]
  */
-@BindingAdapter(value = ["resetLoadingState", "onScrolledToBottom", "visibleThreshold", "isNestedScroll"], requireAll = false)
+@BindingAdapter(value = ["resetLoadingState", "onScrolledToBottom", "visibleThreshold", "isNestedScroll", "predictiveLoad", "onLeadTime"], requireAll = false)
 fun RecyclerView.setScrollLoadCallback(
 	resetLoadingState: Boolean
 	, onScrolledToBottom: OnScrolledListener
 	, visibleThreshold: Int?
 	, isNestedScroll: Boolean = false
+	, predictiveLoad: Boolean = false
+	, onLeadTime: OnLeadTimeListener? = null
 ) {
 	layoutManager?.let { layoutManager ->
 		GlobalScope.launch {
@@ -108,6 +112,8 @@ fun RecyclerView.setScrollLoadCallback(
 					RecyclerViewScrollCallback.Builder(threshold, layoutManager)
 						.resetLoadingState(resetLoadingState)
 						.onScrolledListener(onScrolledToBottom)
+						.predictive(predictiveLoad)
+						.onLeadTimeListener(onLeadTime)
 						.build()
 				)
 			}
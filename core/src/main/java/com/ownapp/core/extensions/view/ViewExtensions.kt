@@ -17,14 +17,11 @@ import androidx.annotation.*
 import androidx.appcompat.app.AppCompatActivity
 import androidx.appcompat.widget.Toolbar
 import androidx.appcompat.widget.TooltipCompat
-import androidx.asynclayoutinflater.view.AsyncLayoutInflater
 import androidx.constraintlayout.widget.ConstraintLayout
 import androidx.constraintlayout.widget.ConstraintSet
 import androidx.core.graphics.drawable.toDrawable
 import androidx.core.view.*
 import androidx.databinding.BindingAdapter
-import androidx.databinding.DataBindingUtil
-import androidx.databinding.ViewDataBinding
 import androidx.drawerlayout.widget.DrawerLayout
 import androidx.fragment.app.Fragment
 import androidx.lifecycle.lifecycleScope
@@ -36,7 +33,6 @@ import com.facebook.shimmer.ShimmerFrameLayout
 import com.google.android.material.floatingactionbutton.FloatingActionButton
 import com.google.android.material.tabs.TabLayout
 import com.google.android.material.tabs.TabLayoutMediator
-import com.ownapp.core.BR
 import com.ownapp.core.R
 import com.ownapp.core.annotation.ResourceType
 import com.ownapp.core.extensions.getEntryName
@@ -47,7 +43,7 @@ import com.ownapp.core.extensions.toActivity
 import com.ownapp.core.extensions.utility.*
 import com.ownapp.core.view.badge.TextBadgeDrawable
 import com.ownapp.core.view.pager.SimpleViewPager2Adapter
-import com.ownapp.core.view.recycler.generic.GenericRecyclerItem
+import com.ownapp.core.view.EntriesRenderer
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.Runnable
@@ -68,25 +64,7 @@ val View.entryName: String?
 fun <T> ViewGroup.setEntries(@LayoutRes layoutId: Int, entries: List<T>?)
 {
     if(layoutId.getResourceTypeName(context) == ResourceType.LAYOUT && layoutId.getEntryName(context) != null)
-    {
-        removeAllViews()
-
-        entries?.forEachIndexed { index, entry ->
-            AsyncLayoutInflater(context).inflate(layoutId, this) { view, _, _ ->
-                DataBindingUtil.bind<ViewDataBinding>(view)?.let {
-                    (entry as? GenericRecyclerItem)?.apply {
-                        adapterPosition = index
-                        isFirst = index == 0
-                        isLast = index == entries.size - 1
-                    }
-
-                    it.setVariable(BR.item, entry)
-                    addView(it.root)
-                    it.executePendingBindings()
-                }
-            }
-        }
-    }
+        EntriesRenderer.of(this).render(layoutId, entries)
 }
 
 @BindingAdapter("background")
@@ -0,0 +1,32 @@
+package com.ownapp.core.support.database
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import androidx.room.Transaction
+
+@Dao
+abstract class PageDao
+{
+	@Query("SELECT * FROM page WHERE list_key = :listKey AND updated_at >= :since ORDER BY page")
+	abstract suspend fun getPages(listKey: String, since: Long): List<PageEntity>
+
+	@Insert(onConflict = OnConflictStrategy.REPLACE)
+	abstract suspend fun insert(pages: List<PageEntity>)
+
+	@Query("DELETE FROM page WHERE list_key = :listKey AND page > :page")
+	abstract suspend fun deleteAfter(listKey: String, page: Int)
+
+	/**
+	 * Writes a batch of pages in one transaction, dropping the pages after [truncateAfter] first.
+	 */
+	@Transaction
+	open suspend fun write(listKey: String, pages: List<PageEntity>, truncateAfter: Int?)
+	{
+		truncateAfter?.let { deleteAfter(listKey, it) }
+
+		if(pages.isNotEmpty())
+			insert(pages)
+	}
+}
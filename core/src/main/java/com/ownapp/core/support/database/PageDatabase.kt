@@ -0,0 +1,40 @@
+package com.ownapp.core.support.database
+
+import android.content.Context
+import androidx.room.Database
+import androidx.room.Room
+import androidx.room.RoomDatabase
+
+/**
+ * Pages of lists kept across launches. Only a cache, so a schema change simply starts it over.
+ */
+@Database(entities = [PageEntity::class], version = 1, exportSchema = false)
+abstract class PageDatabase: RoomDatabase()
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Constant
+	//---------------------------------------------------------------------------------------------------*/
+	companion object
+	{
+		private const val NAME = "ownapp_pages.db"
+
+		@Volatile
+		private var instance: PageDatabase? = null
+
+		fun get(context: Context): PageDatabase
+		{
+			return instance ?: synchronized(this) {
+				instance ?: Room.databaseBuilder(context.applicationContext, PageDatabase::class.java, NAME)
+					.fallbackToDestructiveMigration()
+					.build()
+					.also { instance = it }
+			}
+		}
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Dao
+	//---------------------------------------------------------------------------------------------------*/
+	abstract fun pageDao(): PageDao
+}
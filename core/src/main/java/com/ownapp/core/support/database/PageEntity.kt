@@ -0,0 +1,15 @@
+package com.ownapp.core.support.database
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+
+/**
+ * One page of a paged list as JSON, see [com.ownapp.core.view.fragment.recycler.PageStore].
+ */
+@Entity(tableName = "page", primaryKeys = ["list_key", "page"])
+data class PageEntity(
+	@ColumnInfo(name = "list_key") val listKey: String
+	, val page: Int
+	, val json: String
+	, @ColumnInfo(name = "updated_at") val updatedAt: Long
+)
@@ -0,0 +1,235 @@
+package com.ownapp.core.view
+
+import android.view.ViewGroup
+import androidx.annotation.LayoutRes
+import androidx.asynclayoutinflater.view.AsyncLayoutInflater
+import androidx.databinding.DataBindingUtil
+import androidx.databinding.ViewDataBinding
+import androidx.recyclerview.widget.RecyclerView
+import com.ownapp.core.BR
+import com.ownapp.core.R
+import com.ownapp.core.extensions.utility.logError
+import com.ownapp.core.view.recycler.generic.GenericRecyclerItem
+
+/**
+ * Keeps the children of a non-scrolling [ViewGroup] in step with a list of entries, one binding of
+ * the same layout per entry.
+ *
+ * A child whose entry is still in the list keeps its binding and is only rebound when the entry
+ * instance or its position changed. Children of removed entries go to a small pool that new entries
+ * take from, and only what is still missing then is inflated off the main thread. Inflated children
+ * go to the waiting rows in entry order and are inserted at their position, and inflations still
+ * running when [render] is called again serve the rows waiting after it, only surplus ones end up in
+ * the pool.
+ *
+ * Entries are matched by [GenericRecyclerItem.stableId], then [GenericRecyclerItem.identifier], then
+ * equality.
+ */
+class EntriesRenderer private constructor(private val container: ViewGroup)
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Constant
+	//---------------------------------------------------------------------------------------------------*/
+	companion object
+	{
+		// Detached children kept for entries added later
+		private const val MAX_POOL_SIZE = 4
+
+		/**
+		 * The renderer of [container], created on first use and kept as its tag.
+		 */
+		fun of(container: ViewGroup): EntriesRenderer
+		{
+			return container.getTag(R.id.entries_renderer) as? EntriesRenderer
+				?: EntriesRenderer(container).also {
+					// The container's children belong to the renderer from now on
+					container.removeAllViews()
+					container.setTag(R.id.entries_renderer, it)
+				}
+		}
+
+		private fun keyOf(entry: Any?): Any? = when
+		{
+			entry !is GenericRecyclerItem -> entry
+			entry.stableId != RecyclerView.NO_ID -> entry.stableId
+			else -> entry.identifier ?: entry
+		}
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Class
+	//---------------------------------------------------------------------------------------------------*/
+	private class Row(val key: Any?, var entry: Any?, var binding: ViewDataBinding?)
+	{
+		// Position in the current rows, index is the one it was last bound at
+		var position = -1
+		var index = -1
+		var isLast = false
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	private val inflater by lazy { AsyncLayoutInflater(container.context) }
+
+	private var rows: List<Row> = emptyList()
+	private val pool = ArrayList<ViewDataBinding>(MAX_POOL_SIZE)
+
+	// Rows without a binding in entry order, each finished inflation goes to the first
+	private val waiting = ArrayDeque<Row>()
+	private var pendingInflations = 0
+
+	@LayoutRes
+	private var layoutId = 0
+
+	// Inflations of a previous layout are dropped
+	private var layoutGeneration = 0
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Public
+	//---------------------------------------------------------------------------------------------------*/
+	fun render(@LayoutRes layoutId: Int, entries: List<*>?)
+	{
+		if(layoutId != this.layoutId)
+		{
+			// Bindings of another layout can't be reused
+			container.removeAllViews()
+			rows = emptyList()
+			pool.clear()
+			waiting.clear()
+			pendingInflations = 0
+			layoutGeneration++
+			this.layoutId = layoutId
+		}
+
+		val reusable = HashMap<Any?, ArrayDeque<Row>>(rows.size)
+		rows.forEach { row -> reusable.getOrPut(row.key) { ArrayDeque() }.addLast(row) }
+
+		val newEntries = entries.orEmpty()
+		val newRows = newEntries.mapIndexed { index, entry ->
+			val key = keyOf(entry)
+			(reusable[key]?.removeFirstOrNull() ?: Row(key, entry, null)).also { it.position = index }
+		}
+
+		// What is left wasn't matched by any entry
+		reusable.values.forEach { left ->
+			left.forEach { row ->
+				row.binding?.let {
+					container.removeView(it.root)
+					recycle(it)
+				}
+			}
+		}
+
+		waiting.clear()
+
+		newRows.forEachIndexed { index, row ->
+			val entry = newEntries[index]
+			val binding = row.binding ?: pool.removeLastOrNull()
+
+			if(binding != null)
+				bind(row, binding, entry, index, newEntries.size)
+			else
+			{
+				row.entry = entry
+				waiting.addLast(row)
+			}
+		}
+
+		rows = newRows
+		arrange()
+
+		// Inflations of the previous render are still coming for the rows waiting now
+		repeat(waiting.size - pendingInflations) { inflate() }
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Private
+	//---------------------------------------------------------------------------------------------------*/
+	private fun bind(row: Row, binding: ViewDataBinding, entry: Any?, index: Int, size: Int)
+	{
+		val isLast = index == size - 1
+
+		if(row.binding === binding && row.entry === entry && row.index == index && row.isLast == isLast)
+			return
+
+		(entry as? GenericRecyclerItem)?.apply {
+			adapterPosition = index
+			isFirst = index == 0
+			this.isLast = isLast
+		}
+
+		row.binding = binding
+		row.entry = entry
+		row.index = index
+		row.isLast = isLast
+
+		binding.setVariable(BR.item, entry)
+		binding.executePendingBindings()
+	}
+
+	/**
+	 * Puts the children of bound rows in entry order, moving only the ones out of place.
+	 */
+	private fun arrange()
+	{
+		var childIndex = 0
+
+		rows.forEach { row ->
+			val view = row.binding?.root ?: return@forEach
+
+			if(container.getChildAt(childIndex) !== view)
+			{
+				if(view.parent === container)
+					container.removeView(view)
+
+				container.addView(view, childIndex)
+			}
+
+			childIndex++
+		}
+
+		if(childIndex < container.childCount)
+			container.removeViews(childIndex, container.childCount - childIndex)
+	}
+
+	private fun inflate()
+	{
+		val inflateLayoutId = layoutId
+		val inflateGeneration = layoutGeneration
+
+		pendingInflations++
+
+		inflater.inflate(inflateLayoutId, container) { view, _, _ ->
+			if(inflateGeneration != layoutGeneration)
+				return@inflate
+
+			pendingInflations--
+
+			val binding = DataBindingUtil.bind<ViewDataBinding>(view)
+
+			if(binding == null)
+			{
+				"Layout $inflateLayoutId is not a data binding layout".logError()
+				return@inflate
+			}
+
+			val row = waiting.removeFirstOrNull() ?: return@inflate recycle(binding)
+
+			bind(row, binding, row.entry, row.position, rows.size)
+
+			// Waiting rows are served in order, every row before this one is bound and in place
+			container.addView(binding.root, minOf(row.position, container.childCount))
+		}
+	}
+
+	private fun recycle(binding: ViewDataBinding)
+	{
+		if(pool.size < MAX_POOL_SIZE)
+			pool.add(binding)
+	}
+}
@@ -0,0 +1,281 @@
+package com.ownapp.core.view.fragment.recycler
+
+import com.ownapp.core.extensions.utility.logError
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.async
+import kotlinx.coroutines.delay
+import java.util.Collections
+
+/**
+ * Loads the pages of a list one after the other, with the next [Config.prefetchDistance] pages
+ * already requested while the current one is shown.
+ *
+ * Requests for a page already in flight share its [Deferred], and loaded pages are kept in an LRU
+ * cache of [Config.cacheSize] pages, so a prefetched page is never fetched twice. A failing fetch is
+ * retried [Config.maxRetries] times with a doubling delay, then reported as `null`. The list keeps
+ * the last [Config.maxPages] pages, older ones are dropped from [items] while paging goes on.
+ *
+ * Only to be used from the main thread, like the [CoroutineScope] it launches in.
+ *
+ * @param fetch Items of a page, `null` when the page is invalid and mustn't be cached. Throws to be retried.
+ */
+class PageLoader<T>(
+	private val scope: CoroutineScope
+	, val config: Config = Config()
+	, private val fetch: suspend (page: Int) -> List<T>?
+)
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Class
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * @param prefetchDistance Pages requested ahead of the one being loaded
+	 * @param cacheSize Loaded pages kept for requests of the same page
+	 * @param maxPages Pages kept in [items] at most, the oldest is dropped for every page after them
+	 */
+	data class Config(
+		val firstPage: Int = 1
+		, val prefetchDistance: Int = 1
+		, val cacheSize: Int = 10
+		, val maxPages: Int = 100
+		, val maxRetries: Int = 3
+		, val retryDelayMillis: Long = 1_000L
+	)
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	// Access ordered, the least recently requested page is the first evicted
+	private val cache = object: LinkedHashMap<Int, List<T>>(16, 0.75f, true)
+	{
+		override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Int, List<T>>?): Boolean = size > config.cacheSize
+	}
+
+	private val inFlight = HashMap<Int, Deferred<List<T>?>>()
+
+	// Pages making up the list, in order from firstLoadedPage
+	private val pages = ArrayList<List<T>>()
+
+	// Items of pages, kept in step with it rather than flattened on every read
+	private val loadedItems = ArrayList<T>()
+
+	// Pages dropped from the front for maxPages
+	private var droppedPages = 0
+
+	/**
+	 * An empty page was loaded, there's nothing after it
+	 */
+	var isEndReached = false
+		private set
+
+	/**
+	 * Pages in [items], at most [Config.maxPages]
+	 */
+	val pageCount: Int
+		get() = pages.size
+
+	val firstLoadedPage: Int
+		get() = config.firstPage + droppedPages
+
+	val nextPage: Int
+		get() = firstLoadedPage + pages.size
+
+	/**
+	 * Every item of the pages kept, e.g. to rebuild an adapter after a configuration change. A read
+	 * only view that follows the loader, copy it to keep a snapshot.
+	 */
+	val items: List<T> = Collections.unmodifiableList(loadedItems)
+
+	init
+	{
+		require(config.maxPages > 0) { "At least one page has to be kept" }
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Public
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * Loads [nextPage] and adds it to the list.
+	 *
+	 * @return Items of the page, empty once the end is reached, `null` when it failed
+	 */
+	suspend fun loadNext(): List<T>?
+	{
+		if(isEndReached)
+			return emptyList()
+
+		val page = nextPage
+		val request = load(page)
+
+		prefetch(page)
+
+		val loaded = request.await() ?: return null
+
+		// Another caller awaiting the same page added it already
+		if(page != nextPage)
+			return emptyList()
+
+		pages.add(loaded)
+		loadedItems.addAll(loaded)
+
+		if(loaded.isEmpty())
+			isEndReached = true
+
+		if(pages.size > config.maxPages)
+		{
+			loadedItems.subList(0, pages.removeAt(0).size).clear()
+			droppedPages++
+		}
+
+		return loaded
+	}
+
+	/**
+	 * A page from the cache, the request already fetching it, or a new request.
+	 */
+	fun load(page: Int): Deferred<List<T>?>
+	{
+		cache[page]?.let { return CompletableDeferred(it) }
+		inFlight[page]?.let { return it }
+
+		// Lazy, so it is registered before a fetch finishing without suspending can unregister it
+		val request = scope.async(start = CoroutineStart.LAZY) {
+			try
+			{
+				fetchWithRetry(page)?.also { cache[page] = it }
+			}
+			finally
+			{
+				// After invalidate the page may belong to a newer request
+				if(inFlight[page] === coroutineContext[Job])
+					inFlight.remove(page)
+			}
+		}
+
+		inFlight[page] = request
+		request.start()
+
+		return request
+	}
+
+	fun isCached(page: Int): Boolean = cache.containsKey(page)
+
+	/**
+	 * Start the list with pages loaded elsewhere, e.g. from disk, until they are [replace]d.
+	 */
+	fun seed(stored: List<List<T>>)
+	{
+		val kept = stored.takeLast(config.maxPages)
+
+		pages.clear()
+		pages.addAll(kept)
+		loadedItems.clear()
+		kept.forEach { loadedItems.addAll(it) }
+		droppedPages = stored.size - kept.size
+		isEndReached = stored.lastOrNull()?.isEmpty() == true
+	}
+
+	/**
+	 * Fetch [page] again instead of taking it from the cache.
+	 */
+	suspend fun refetch(page: Int): List<T>?
+	{
+		cache.remove(page)
+		return load(page).await()
+	}
+
+	/**
+	 * Put [items] in place of the loaded [page], an empty page ends the list there.
+	 *
+	 * @return False when the page isn't kept or didn't change
+	 */
+	fun replace(page: Int, items: List<T>): Boolean
+	{
+		val index = page - firstLoadedPage
+
+		if(index !in pages.indices || pages[index] == items)
+			return false
+
+		var start = 0
+
+		for(i in 0 until index)
+			start += pages[i].size
+
+		if(items.isEmpty())
+		{
+			pages.subList(index, pages.size).clear()
+			pages.add(items)
+			loadedItems.subList(start, loadedItems.size).clear()
+			isEndReached = true
+		}
+		else
+		{
+			val range = loadedItems.subList(start, start + pages[index].size)
+
+			range.clear()
+			range.addAll(items)
+			pages[index] = items
+		}
+
+		return true
+	}
+
+	/**
+	 * Forget every page, e.g. on refresh. Requests in flight are cancelled.
+	 */
+	fun invalidate()
+	{
+		inFlight.values.toList().forEach { it.cancel() }
+		inFlight.clear()
+		cache.clear()
+		pages.clear()
+		loadedItems.clear()
+		droppedPages = 0
+		isEndReached = false
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Private
+	//---------------------------------------------------------------------------------------------------*/
+	private fun prefetch(page: Int)
+	{
+		for(next in page + 1..page + config.prefetchDistance)
+			load(next)
+	}
+
+	private suspend fun fetchWithRetry(page: Int): List<T>?
+	{
+		var attempt = 0
+
+		while(true)
+		{
+			try
+			{
+				return fetch(page)
+			}
+			catch(e: CancellationException)
+			{
+				throw e
+			}
+			catch(e: Exception)
+			{
+				if(attempt >= config.maxRetries)
+				{
+					"Page $page failed after ${attempt + 1} attempts => $e".logError()
+					return null
+				}
+
+				delay(config.retryDelayMillis shl attempt)
+				attempt++
+			}
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package com.ownapp.core.view.fragment.recycler
+
+import android.content.Context
+import com.google.gson.Gson
+import com.google.gson.reflect.TypeToken
+import com.ownapp.core.extensions.utility.logException
+import com.ownapp.core.support.database.PageDatabase
+import com.ownapp.core.support.database.PageEntity
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import java.lang.reflect.Type
+import java.util.TreeMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Keeps the first pages of a [PagedListViewModel] on disk, so a list seen before shows at once while
+ * it is fetched again.
+ *
+ * Writes are buffered for [WRITE_DELAY_MILLIS] and go to the database as one transaction, so the
+ * prefetched pages of a fast scroll don't each pay for a commit.
+ *
+ * ```
+ * override val pageStore = PageStore.create<Product>(application, "products")
+ * ```
+ *
+ * @param listKey Tells the lists of an app apart, e.g. include the query of a search
+ * @param maxStoredPages Pages kept from the first one, the ones after it are always fetched
+ * @param maxAgeMillis Stored pages older than this aren't shown anymore
+ */
+class PageStore<T>(
+	context: Context
+	, val listKey: String
+	, private val type: Type
+	, val maxStoredPages: Int = DEFAULT_MAX_STORED_PAGES
+	, private val maxAgeMillis: Long = TimeUnit.DAYS.toMillis(7)
+)
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Constant
+	//---------------------------------------------------------------------------------------------------*/
+	companion object
+	{
+		const val DEFAULT_MAX_STORED_PAGES = 3
+		private const val WRITE_DELAY_MILLIS = 300L
+
+		private val writeScope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+		inline fun <reified T> create(
+			context: Context
+			, listKey: String
+			, maxStoredPages: Int = DEFAULT_MAX_STORED_PAGES
+		): PageStore<T> = PageStore(context, listKey, object: TypeToken<List<T>>(){}.type, maxStoredPages)
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	private val dao = PageDatabase.get(context).pageDao()
+	private val gson = Gson()
+
+	// Guarded by itself, filled on the main thread and drained by the write
+	private val pending = TreeMap<Int, List<T>>()
+	private var truncateAfter: Int? = null
+	private var writeJob: Job? = null
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Public
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * Stored pages in order from [firstPage], up to the first one missing.
+	 */
+	suspend fun load(firstPage: Int): List<List<T>> = withContext(Dispatchers.IO) {
+		val pages = ArrayList<List<T>>()
+
+		try
+		{
+			val since = System.currentTimeMillis() - maxAgeMillis
+
+			for(entity in dao.getPages(listKey, since))
+			{
+				if(entity.page != firstPage + pages.size)
+					break
+
+				pages.add(gson.fromJson<List<T>>(entity.json, type) ?: break)
+			}
+		}
+		catch(e: Exception)
+		{
+			// A store that can't be read is the same as an empty one
+			e.logException()
+			pages.clear()
+		}
+
+		pages
+	}
+
+	/**
+	 * Store [items] as [page].
+	 *
+	 * @param dropLater Drop the pages stored after [page] since they may have shifted, by default
+	 * when it's the first page
+	 */
+	fun put(page: Int, items: List<T>, firstPage: Int, dropLater: Boolean = page == firstPage)
+	{
+		if(page >= firstPage + maxStoredPages)
+			return
+
+		synchronized(pending) {
+			if(dropLater)
+			{
+				pending.tailMap(page, false).clear()
+				truncateAfter = truncateAfter?.let { minOf(it, page) } ?: page
+			}
+
+			pending[page] = items
+			scheduleWrite()
+		}
+	}
+
+	fun clear()
+	{
+		synchronized(pending) {
+			pending.clear()
+			truncateAfter = Int.MIN_VALUE
+			scheduleWrite()
+		}
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Private
+	//---------------------------------------------------------------------------------------------------*/
+	private fun scheduleWrite()
+	{
+		if(writeJob == null)
+			writeJob = writeScope.launch {
+				delay(WRITE_DELAY_MILLIS)
+				write()
+			}
+	}
+
+	private suspend fun write()
+	{
+		val (pages, truncate) = synchronized(pending) {
+			val drained = TreeMap(pending) to truncateAfter
+			pending.clear()
+			truncateAfter = null
+
+			// Anything put from now on needs a write of its own
+			writeJob = null
+			drained
+		}
+
+		val now = System.currentTimeMillis()
+
+		try
+		{
+			dao.write(
+				listKey
+				, pages.map { (page, items) -> PageEntity(listKey, page, gson.toJson(items, type), now) }
+				, truncate
+			)
+		}
+		catch(e: Exception)
+		{
+			e.logException()
+		}
+	}
+}
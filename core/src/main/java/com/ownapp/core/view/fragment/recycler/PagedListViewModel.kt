@@ -12,6 +12,7 @@ import com.ownapp.core.extensions.isNetworkConnected
 import com.ownapp.core.extensions.utility.info
 import com.ownapp.core.extensions.utility.toast
 import com.ownapp.core.support.network.response.OwnappPagedLegacyResponse
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.flow.*
 import kotlinx.coroutines.launch
 
@@ -24,10 +25,47 @@ abstract class PagedListViewModel<T>: ViewModel()
 	val isResetLoadingState = MutableLiveData(false)
 	open val isLocal = false
 	
-	open fun initialize() = fetchPagedList(page = 1)
+	open val pageConfig: PageLoader.Config
+		get() = PageLoader.Config()
+	
+	protected val pageLoader: PageLoader<T> by lazy {
+		PageLoader(viewModelScope, pageConfig) { page -> fetchPage(page) }
+	}
+	
+	/**
+	 * Items of every page loaded so far, [list] only holds the last page
+	 */
+	val items: List<T>
+		get() = pageLoader.items
+	
+	/**
+	 * Keeps the first pages on disk, shown at once by the first load of the next view model while
+	 * they are fetched again
+	 */
+	open val pageStore: PageStore<T>? = null
+	
+	/**
+	 * Set when stored pages were replaced by fresh ones, for the adapter to diff in [items]
+	 */
+	val snapshot = MutableLiveData<List<T>>()
+	
+	private var loadJob: Job? = null
+	private var revalidateJob: Job? = null
+	private var isStoreRestored = false
+	
+	open fun initialize() = fetchPagedList(page = pageLoader.config.firstPage)
 
 	open fun reset()
 	{
+		// Pages can't be loaded again, the loader keeps the ones shown so paging doesn't add them twice
+		if(!isLocal && fragment?.isNetworkConnected() == false)
+			return onOffline()
+		
+		// A page of the old list mustn't land in the new one
+		loadJob?.cancel()
+		revalidateJob?.cancel()
+		isLoading = false
+		pageLoader.invalidate()
 		isResetLoadingState.value = true
 		initialize()
 		isResetLoadingState.value = false
@@ -35,32 +73,37 @@ abstract class PagedListViewModel<T>: ViewModel()
 
 	open fun fetch(page: Int): Flow<OwnappPagedLegacyResponse<T>?> = flow { emit(null) }
 
+	/**
+	 * Loads the page after the last loaded one, [page] only tells the first load apart.
+	 */
 	open fun fetchPagedList(page: Int)
 	{
-		if(!isLocal && fragment?.isNetworkConnected() == false)
-		{
-			fragment?.toast(R.string.error_no_internet)
-			list.value = list.value
+		// The pages outlived the view, which rebuilds its list from [items]
+		if(page == pageLoader.config.firstPage && pageLoader.pageCount > 0)
 			return
-		}
+		
+		// Stored and cached pages don't need the network
+		val isAvailableOffline = pageLoader.isCached(pageLoader.nextPage) || (pageStore != null && !isStoreRestored)
+		
+		if(!isLocal && fragment?.isNetworkConnected() == false && !isAvailableOffline)
+			return onOffline()
 		
 		if(!isLoading)
 		{
-			viewModelScope.launch {
-				fetch(page)
-					.onStart { isLoading = true }
-					.onCompletion { isLoading = false }
-					.retry()
-					.collect { response ->
-						when(response?.data?.status)
-						{
-							// Success
-							1 -> onGetList(response.list)
-
-							// Invalid Status
-							else -> onGetList(null)
-						}
-					}
+			isLoading = true
+			
+			loadJob = viewModelScope.launch {
+				if(restoreStored())
+					return@launch
+				
+				val page = pageLoader.nextPage
+				val newList = pageLoader.loadNext()
+				
+				if(newList != null && pageLoader.nextPage > page)
+					pageStore?.put(page, newList, pageLoader.config.firstPage)
+				
+				isLoading = false
+				onGetList(newList)
 			}
 		}
 	}
@@ -69,4 +112,80 @@ abstract class PagedListViewModel<T>: ViewModel()
 	{
 		list.value = newList
 	}
+	
+	/**
+	 * Show the stored pages on the first load and fetch them again in the background.
+	 *
+	 * @return False when there's nothing stored and the first page has to be loaded
+	 */
+	private suspend fun restoreStored(): Boolean
+	{
+		val store = pageStore
+		
+		if(store == null || isStoreRestored || pageLoader.pageCount > 0)
+			return false
+		
+		// Only once, a refresh wants fresh pages
+		isStoreRestored = true
+		
+		val stored = store.load(pageLoader.config.firstPage)
+		
+		if(stored.isEmpty())
+			return false
+		
+		pageLoader.seed(stored)
+		isLoading = false
+		onGetList(pageLoader.items.toList())
+		
+		revalidateJob = viewModelScope.launch { revalidate(store, stored.size) }
+		return true
+	}
+	
+	private suspend fun revalidate(store: PageStore<T>, count: Int)
+	{
+		val firstPage = pageLoader.config.firstPage
+		
+		for(page in firstPage until firstPage + count)
+		{
+			// Offline the stored pages stay
+			val fresh = pageLoader.refetch(page) ?: return
+			val isChanged = pageLoader.replace(page, fresh)
+			
+			// Only a changed first page shifts the later ones, until then a failed refetch keeps them
+			store.put(page, fresh, firstPage, dropLater = page == firstPage && isChanged)
+			
+			if(isChanged)
+				snapshot.value = pageLoader.items.toList()
+			
+			if(fresh.isEmpty())
+				return
+		}
+	}
+	
+	/**
+	 * Nothing was loaded, `null` ends the loading state without adding rows
+	 */
+	private fun onOffline()
+	{
+		fragment?.toast(R.string.error_no_internet)
+		onGetList(null)
+	}
+	
+	/**
+	 * First response of [fetch] for [page], which may keep emitting after it, failures are thrown for
+	 * [PageLoader] to retry.
+	 */
+	private suspend fun fetchPage(page: Int): List<T>?
+	{
+		val response = fetch(page).filterNotNull().firstOrNull()
+		
+		return when(response?.data?.status)
+		{
+			// Success
+			1 -> response?.list.orEmpty()
+			
+			// Invalid Status
+			else -> null
+		}
+	}
 }
\ No newline at end of file
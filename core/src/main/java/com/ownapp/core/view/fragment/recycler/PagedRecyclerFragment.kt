@@ -40,8 +40,9 @@ abstract class PagedRecyclerFragment<T: GenericRecyclerItem>: Fragment(R.layout.
 		viewModel.list.observe(viewLifecycleOwner) {
 			binder.shimmerContainer.stop()
 
+			// Every page so far, the view may be new to a view model with pages already loaded
 			if(adapter.currentList.isNullOrEmpty())
-				adapter.submitList(it)
+				adapter.submitList(viewModel.items.ifEmpty { it.orEmpty() })
 			else if(!it.isNullOrEmpty())
 				adapter.add(it)
 
@@ -49,6 +50,11 @@ abstract class PagedRecyclerFragment<T: GenericRecyclerItem>: Fragment(R.layout.
 			viewModel.isLoading = false
 		}
 
+		// The latest pages, a redelivered snapshot may predate them
+		viewModel.snapshot.observe(viewLifecycleOwner) {
+			adapter.submitList(viewModel.items)
+		}
+
 		viewModel.initialize()
 	}
 }
\ No newline at end of file
@@ -77,6 +77,11 @@ abstract class RefreshablePagedRecyclerFragment<T: GenericRecyclerItem>
 			}
 		}
 
+		// The latest pages, a redelivered snapshot may predate them
+		viewModel.snapshot.observe(viewLifecycleOwner) {
+			adapter.submitList(viewModel.items)
+		}
+
 		viewModel.initialize()
 	}
 
@@ -90,8 +95,12 @@ abstract class RefreshablePagedRecyclerFragment<T: GenericRecyclerItem>
 				swipeRefreshContainer.isRefreshing = false
 			}
 
-			adapter.submitList(list)
+			// Every page the loader holds, it keeps them when the refresh couldn't load
+			adapter.submitList(viewModel.items.ifEmpty { list.orEmpty() })
 		}
+		// Every page so far, the view may be new to a view model with pages already loaded
+		else if(adapter.currentList.isEmpty())
+			adapter.submitList(viewModel.items.ifEmpty { list.orEmpty() })
 		else if(!list.isNullOrEmpty())
 			adapter.add(list)
 	}
@@ -0,0 +1,145 @@
+package com.ownapp.core.view.recycler
+
+import android.util.SparseIntArray
+import androidx.recyclerview.widget.RecyclerView
+import com.ownapp.core.R
+import com.ownapp.core.view.recycler.generic.GenericRecyclerAdapter
+
+/**
+ * [RecyclerView.RecycledViewPool] that counts how often a holder was found in it, and grows its
+ * capacity per view type to what the lists using it show at once.
+ *
+ * A miss means the list had to inflate a new holder, so [hitCount] against [missCount] tells whether
+ * sharing the pool pays off.
+ */
+class CountingRecycledViewPool: RecyclerView.RecycledViewPool()
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Constant
+	//---------------------------------------------------------------------------------------------------*/
+	companion object
+	{
+		// RecycledViewPool's own default capacity per view type
+		private const val DEFAULT_CAPACITY = 5
+
+		// Room for a list scrolling into view while another one is still being recycled
+		private const val VISIBLE_FACTOR = 2
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	private val hits = SparseIntArray()
+	private val misses = SparseIntArray()
+	private val capacities = SparseIntArray()
+
+	val hitCount: Int
+		get() = hits.sum()
+
+	val missCount: Int
+		get() = misses.sum()
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Public
+	//---------------------------------------------------------------------------------------------------*/
+	fun hitCount(viewType: Int): Int = hits[viewType]
+
+	fun missCount(viewType: Int): Int = misses[viewType]
+
+	fun resetCounters()
+	{
+		hits.clear()
+		misses.clear()
+	}
+
+	/**
+	 * Grow the capacity of [viewType] when a list using this pool shows [count] of them at once.
+	 */
+	fun onVisibleCount(viewType: Int, count: Int)
+	{
+		val capacity = count * VISIBLE_FACTOR
+
+		if(capacity > capacities.get(viewType, DEFAULT_CAPACITY))
+			setMaxRecycledViews(viewType, capacity)
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Override
+	//---------------------------------------------------------------------------------------------------*/
+	override fun getRecycledView(viewType: Int): RecyclerView.ViewHolder?
+	{
+		return super.getRecycledView(viewType).also {
+			val counts = if(it != null) hits else misses
+			counts.put(viewType, counts[viewType] + 1)
+		}
+	}
+
+	override fun setMaxRecycledViews(viewType: Int, max: Int)
+	{
+		capacities.put(viewType, max)
+		super.setMaxRecycledViews(viewType, max)
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Private
+	//---------------------------------------------------------------------------------------------------*/
+	private fun SparseIntArray.sum(): Int
+	{
+		var sum = 0
+
+		for(i in 0 until size())
+			sum += valueAt(i)
+
+		return sum
+	}
+}
+
+/**
+ * Pools shared by the lists nested in one outer list, one per adapter key. Kept as a tag of the outer
+ * list, so the pools and the views in them go away together with it.
+ */
+internal class SharedPoolRegistry
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Constant
+	//---------------------------------------------------------------------------------------------------*/
+	companion object
+	{
+		fun of(outer: RecyclerView): SharedPoolRegistry
+		{
+			return outer.getTag(R.id.shared_pool_registry) as? SharedPoolRegistry
+				?: SharedPoolRegistry().also { outer.setTag(R.id.shared_pool_registry, it) }
+		}
+
+		/**
+		 * Adapters of one class may still inflate different layouts for the same view type, which
+		 * [GenericRecyclerAdapter.poolKey] tells apart. `null` when it can't tell yet.
+		 */
+		private fun keyOf(adapter: RecyclerView.Adapter<*>): Any?
+		{
+			return if(adapter is GenericRecyclerAdapter<*>) adapter.poolKey else adapter.javaClass
+		}
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	private val pools = HashMap<Any, CountingRecycledViewPool>()
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Public
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * @return Null while the layouts of [adapter] aren't known
+	 */
+	fun poolFor(adapter: RecyclerView.Adapter<*>): CountingRecycledViewPool?
+	{
+		return keyOf(adapter)?.let { pools.getOrPut(it) { CountingRecycledViewPool() } }
+	}
+}
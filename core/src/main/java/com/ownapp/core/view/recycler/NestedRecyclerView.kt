@@ -2,6 +2,7 @@ package com.ownapp.core.view.recycler
 
 import android.content.Context
 import android.util.AttributeSet
+import android.util.SparseIntArray
 import android.view.MotionEvent
 import android.view.View
 import androidx.core.view.doOnAttach
@@ -9,6 +10,7 @@ import androidx.core.view.doOnLayout
 import androidx.databinding.BindingAdapter
 import androidx.databinding.ViewDataBinding
 import androidx.recyclerview.widget.*
+import androidx.viewpager2.widget.ViewPager2
 import com.google.android.material.theme.overlay.MaterialThemeOverlay
 import com.ownapp.core.R
 import com.ownapp.core.extensions.utility.cast
@@ -21,6 +23,7 @@ import com.ownapp.core.view.recycler.NestedRecyclerView.BindingAdapters.setEmpty
 import com.ownapp.core.view.recycler.NestedRecyclerView.BindingAdapters.setMaxRatio
 import com.ownapp.core.view.recycler.NestedRecyclerView.BindingAdapters.setMinRatio
 import com.ownapp.core.view.recycler.NestedRecyclerView.BindingAdapters.setRatio
+import com.ownapp.core.view.recycler.generic.GenericRecyclerAdapter
 import kotlin.math.max
 import kotlin.math.min
 
@@ -49,6 +52,12 @@ class NestedRecyclerView: RecyclerView
             isScrollable = isEnabled
         }
     
+        @BindingAdapter("sharePool")
+        @JvmStatic fun NestedRecyclerView.setSharePool(isEnabled: Boolean)
+        {
+            isPoolShared = isEnabled
+        }
+    
         @BindingAdapter("showEmpty")
         @JvmStatic fun NestedRecyclerView.setShowEmpty(isEnabled: Boolean)
         {
@@ -169,6 +178,51 @@ class NestedRecyclerView: RecyclerView
         }
 
     var isScrollable: Boolean = true
+    
+    /**
+     * Share the recycled view pool with every list of an equal adapter nested in the same outer
+     * list, so a carousel scrolled into view takes the holders of the ones scrolled out of it.
+     * Off by default, only lists whose adapters agree on [GenericRecyclerAdapter.poolKey] share.
+     */
+    var isPoolShared: Boolean = false
+        set(value)
+        {
+            if(field != value)
+            {
+                field = value
+                
+                if(value)
+                    sharePool()
+                else if(recycledViewPool is CountingRecycledViewPool)
+                    setRecycledViewPool(null)
+            }
+        }
+    
+    /**
+     * List whose nested lists share pools with this one, the closest [RecyclerView] ancestor when
+     * null. The RecyclerView inside a [ViewPager2] is never taken for it, set it when other lists
+     * between this one and the outer list would be.
+     */
+    var outerRecyclerView: RecyclerView? = null
+        set(value)
+        {
+            if(field !== value)
+            {
+                field = value
+                
+                if(isAttachedToWindow)
+                    sharePool()
+            }
+        }
+    
+    /**
+     * Shared pool in use, with its hit and miss counters
+     */
+    val sharedPool: CountingRecycledViewPool?
+        get() = recycledViewPool as? CountingRecycledViewPool
+    
+    // Children per view type in the last layout, reused to keep layout allocation free
+    private val visibleCounts = SparseIntArray()
 
     val snapPosition: Int
         get() = getSnapPosition(pagerSnapHelper)
@@ -290,11 +344,43 @@ class NestedRecyclerView: RecyclerView
         super.setAdapter(adapter)
         adapter?.registerAdapterDataObserver(observer)
         
+        // After super, the previous adapter's holders belong in the previous pool
+        if(isAttachedToWindow)
+            sharePool()
+        
         if(isInitialized)
             checkIfEmpty()
         else isInitialized = true
     }
 
+    override fun onAttachedToWindow()
+    {
+        super.onAttachedToWindow()
+        sharePool()
+    }
+    
+    override fun onLayout(changed: Boolean, l: Int, t: Int, r: Int, b: Int)
+    {
+        super.onLayout(changed, l, t, r, b)
+        
+        // A generic adapter has no pool key until its first holder is created
+        if(isPoolShared && sharedPool == null)
+            sharePool()
+        
+        val pool = sharedPool ?: return
+        
+        visibleCounts.clear()
+        
+        for(i in 0 until childCount)
+        {
+            val viewType = getChildViewHolder(getChildAt(i)).itemViewType
+            visibleCounts.put(viewType, visibleCounts[viewType] + 1)
+        }
+        
+        for(i in 0 until visibleCounts.size())
+            pool.onVisibleCount(visibleCounts.keyAt(i), visibleCounts.valueAt(i))
+    }
+
     override fun dispatchTouchEvent(ev: MotionEvent?): Boolean
     {
         val temporarilySkipsInterception = nestedScrollTarget != null
@@ -428,4 +514,43 @@ class NestedRecyclerView: RecyclerView
         // measureChildren(MeasureSpec.makeMeasureSpec(calculatedWidth, MeasureSpec.getMode(widthMeasureSpec)),
         //     MeasureSpec.makeMeasureSpec(calculatedHeight, MeasureSpec.getMode(heightMeasureSpec)))
     }
+    
+    
+    //**--------------------------------------------------------------------------------------------------
+    //*      Private
+    //---------------------------------------------------------------------------------------------------*/
+    private fun sharePool()
+    {
+        if(!isPoolShared)
+            return
+        
+        val adapter = adapter ?: return
+        val outer = findOuterRecyclerView() ?: return
+        val pool = SharedPoolRegistry.of(outer).poolFor(adapter) ?: return
+        
+        if(recycledViewPool !== pool)
+        {
+            // Otherwise the holders stay with this list while it sits detached in the outer one
+            (layoutManager as? LinearLayoutManager)?.recycleChildrenOnDetach = true
+            setRecycledViewPool(pool)
+        }
+    }
+    
+    private fun findOuterRecyclerView(): RecyclerView?
+    {
+        outerRecyclerView?.let { return it }
+        
+        var ancestor = parent
+        
+        while(ancestor != null)
+        {
+            // A pager's own list holds pages, not the lists of an outer one
+            if(ancestor is RecyclerView && ancestor.parent !is ViewPager2)
+                return ancestor
+            
+            ancestor = ancestor.parent
+        }
+        
+        return null
+    }
 }
\ No newline at end of file
@@ -3,4 +3,17 @@ package com.ownapp.core.view.recycler
 interface OnScrolledListener
 {
 	fun onScrolledToBottom(page: Int)
-}
\ No newline at end of file
+}
+
+/**
+ * How early a page requested by [RecyclerViewScrollCallback] arrived, to tune its prediction.
+ */
+fun interface OnLeadTimeListener
+{
+	/**
+	 * @param leadMillis Estimated time the list could still scroll before reaching the end when the
+	 * page arrived, negative for how long the end was waited at
+	 * @param latencyMillis Time from requesting the page until it arrived
+	 */
+	fun onLeadTime(page: Int, leadMillis: Long, latencyMillis: Long)
+}
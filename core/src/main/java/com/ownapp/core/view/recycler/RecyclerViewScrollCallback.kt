@@ -1,5 +1,6 @@
 package com.ownapp.core.view.recycler
 
+import android.os.SystemClock
 import androidx.recyclerview.widget.RecyclerView
 import com.ownapp.core.extensions.utility.debug
 import com.ownapp.core.extensions.utility.info
@@ -22,9 +23,33 @@ class RecyclerViewScrollCallback(private val visibleThreshold: Int, private val
 	private lateinit var layoutManagerType: LayoutManagerType
 	private lateinit var onScrolledListener: OnScrolledListener
 
+	// Predictive loading, requests the next page once the end is closer in time than a page takes
+	private var isPredictive = false
+	private var onLeadTimeListener: OnLeadTimeListener? = null
+	// Smoothed scroll speed towards the end in px per millisecond
+	private var velocity = 0f
+	// Smoothed time a page takes to arrive
+	private var latencyMillis = INITIAL_LATENCY_MILLIS.toFloat()
+	private var lastScrolledMillis = 0L
+	private var requestedMillis = 0L
+	private var endReachedMillis = 0L
+
+	companion object {
+		private const val INITIAL_LATENCY_MILLIS = 800L
+		// Weight of the newest sample in the smoothed values
+		private const val SMOOTHING = 0.3f
+		// Request this much earlier than the measured latency
+		private const val LEAD_FACTOR = 1.5f
+		// A longer gap between two scroll events starts a new scroll
+		private const val SCROLL_GAP_MILLIS = 100L
+		private const val MIN_VELOCITY = 0.05f
+	}
+
 	constructor(builder: Builder) : this(builder.visibleThreshold, builder.layoutManager) {
 		this.layoutManagerType = builder.layoutManagerType
 		this.onScrolledListener = builder.onScrolledListener
+		this.isPredictive = builder.isPredictive
+		this.onLeadTimeListener = builder.onLeadTimeListener
 		if (builder.resetLoadingState) {
 			resetState()
 		}
@@ -37,12 +62,17 @@ class RecyclerViewScrollCallback(private val visibleThreshold: Int, private val
 	{
 		val lastVisibleItemPosition = RecyclerViewUtil.getLastVisibleItemPosition(layoutManager, layoutManagerType)
 		val totalItemCount = layoutManager.itemCount
+		val now = SystemClock.uptimeMillis()
+
+		if (isPredictive)
+			updateVelocity(if (layoutManager.canScrollVertically()) dy else dx, now)
 
 		// If the total item count is zero and the previous isn't, assume the
 		// list is invalidated and should be reset back to initial state
 		if (totalItemCount < previousTotalItemCount) {
 			this.currentPage = this.startingPageIndex
 			this.previousTotalItemCount = totalItemCount
+			this.requestedMillis = 0L
 			if (totalItemCount == 0) {
 				this.loading = true
 			}
@@ -51,35 +81,98 @@ class RecyclerViewScrollCallback(private val visibleThreshold: Int, private val
 		// changed, if so we conclude it has finished loading and update the current page
 		// number and total item count.
 		if (loading && totalItemCount > previousTotalItemCount) {
+			if (requestedMillis > 0L)
+				onPageArrived(recyclerView, lastVisibleItemPosition, now)
+
 			loading = false
 			previousTotalItemCount = totalItemCount
 		}
 
+		// Scrolled to the end before the requested page arrived
+		if (loading && requestedMillis > 0L && endReachedMillis == 0L && lastVisibleItemPosition >= previousTotalItemCount - 1)
+			endReachedMillis = now
+
 		// If it isn’t currently loading, we check to see if we have breached
 		// the visibleThreshold and need to reload more data.
 		// If we do need to reload some more data, we execute onLoadMore to fetch the data.
 		// threshold should reflect how many total columns there are too
-		if (!loading && lastVisibleItemPosition + visibleThreshold > totalItemCount)
+		if (!loading && (lastVisibleItemPosition + visibleThreshold > totalItemCount
+				|| isPredictive && millisToEnd(recyclerView, lastVisibleItemPosition, totalItemCount) < latencyMillis * LEAD_FACTOR))
 		{
 			info("RecyclerView onScrolledToBottom Load More, Page" to currentPage)
 
 			onScrolledListener.onScrolledToBottom(++currentPage)
 			loading = true
-
+			requestedMillis = now
+			endReachedMillis = 0L
 		}
 	}
 
+	private fun updateVelocity(delta: Int, now: Long)
+	{
+		val elapsed = now - lastScrolledMillis
+		lastScrolledMillis = now
+
+		if (elapsed in 1..SCROLL_GAP_MILLIS)
+			velocity += SMOOTHING * (delta.toFloat() / elapsed - velocity)
+		else if (elapsed > SCROLL_GAP_MILLIS)
+			velocity = 0f
+	}
+
+	/**
+	 * Time until the last item scrolls into view at the current velocity, infinite when not moving
+	 * towards it. The average row extent stands in for the extent of the rows not laid out yet, a grid
+	 * fitting span count items in a row.
+	 */
+	private fun millisToEnd(recyclerView: RecyclerView, lastVisibleItemPosition: Int, totalItemCount: Int): Float
+	{
+		val childCount = recyclerView.childCount
+
+		if (velocity < MIN_VELOCITY || childCount == 0)
+			return Float.POSITIVE_INFINITY
+
+		val extent = if (layoutManager.canScrollVertically()) recyclerView.height else recyclerView.width
+		val remaining = (totalItemCount - 1 - lastVisibleItemPosition).coerceAtLeast(0)
+		val spanCount = RecyclerViewUtil.getSpanCount(layoutManager, layoutManagerType)
+
+		// Rounded up, a row counts once it has an item in it
+		val rows = (childCount + spanCount - 1) / spanCount
+		val remainingRows = (remaining + spanCount - 1) / spanCount
+
+		return remainingRows * extent.toFloat() / rows / velocity
+	}
+
+	private fun onPageArrived(recyclerView: RecyclerView, lastVisibleItemPosition: Int, now: Long)
+	{
+		val latency = now - requestedMillis
+		latencyMillis += SMOOTHING * (latency - latencyMillis)
+		requestedMillis = 0L
+
+		val lead = if (endReachedMillis > 0L)
+			endReachedMillis - now
+		else millisToEnd(recyclerView, lastVisibleItemPosition, previousTotalItemCount)
+			.takeIf { it.isFinite() }
+			?.toLong()
+
+		// Unknown while the list stands still before the end
+		lead?.let { onLeadTimeListener?.onLeadTime(currentPage, it, latency) }
+	}
+
 	// Call this method whenever performing new searches
 	private fun resetState() {
 		this.currentPage = this.startingPageIndex
 		this.previousTotalItemCount = 0
 		this.loading = true
+		this.requestedMillis = 0L
+		this.endReachedMillis = 0L
 	}
 
 	class Builder(internal var visibleThreshold: Int = 2, internal val layoutManager: RecyclerView.LayoutManager) {
 		internal var layoutManagerType = LayoutManagerType.LINEAR
 		internal lateinit var onScrolledListener: OnScrolledListener
 		internal var resetLoadingState: Boolean = false
+		internal var isPredictive: Boolean = false
+		internal var onLeadTimeListener: OnLeadTimeListener? = null
 
 		fun visibleThreshold(value: Int): Builder {
 			visibleThreshold = value
@@ -96,6 +189,20 @@ class RecyclerViewScrollCallback(private val visibleThreshold: Int, private val
 			return this
 		}
 
+		/**
+		 * Also request the next page once the scroll velocity would reach the end sooner than
+		 * pages have been taking to arrive, besides the [visibleThreshold].
+		 */
+		fun predictive(value: Boolean): Builder {
+			isPredictive = value
+			return this
+		}
+
+		fun onLeadTimeListener(value: OnLeadTimeListener?): Builder {
+			onLeadTimeListener = value
+			return this
+		}
+
 		fun build(): RecyclerViewScrollCallback {
 			layoutManagerType = RecyclerViewUtil.computeLayoutManagerType(layoutManager)
 			visibleThreshold = RecyclerViewUtil.computeVisibleThreshold(layoutManager, layoutManagerType, visibleThreshold)
@@ -29,6 +29,19 @@ object RecyclerViewUtil
         LayoutManagerType.LINEAR, LayoutManagerType.DEFAULT -> visibleThreshold
     }
 
+    /**
+     * Items laid out side by side in a row, 1 for linear lists
+     */
+    fun getSpanCount(
+        layoutManager: RecyclerView.LayoutManager?
+        , layoutManagerType: LayoutManagerType
+    ): Int = when (layoutManagerType)
+    {
+        LayoutManagerType.STAGGERED_GRID -> (layoutManager as StaggeredGridLayoutManager).spanCount
+        LayoutManagerType.GRID -> (layoutManager as GridLayoutManager).spanCount
+        LayoutManagerType.LINEAR, LayoutManagerType.DEFAULT -> 1
+    }
+
     fun getLastVisibleItemPosition(
         layoutManager: RecyclerView.LayoutManager?
         , layoutManagerType: LayoutManagerType
@@ -0,0 +1,92 @@
+package com.ownapp.core.view.recycler.generic
+
+import androidx.annotation.LayoutRes
+import androidx.asynclayoutinflater.view.AsyncLayoutInflater
+import androidx.databinding.DataBindingUtil
+import androidx.databinding.ViewDataBinding
+import androidx.recyclerview.widget.RecyclerView
+import com.ownapp.core.extensions.utility.logError
+import kotlin.math.max
+
+/**
+ * Inflates rows of a [GenericRecyclerAdapter] on a background thread before they are needed, so the
+ * first fling doesn't pay for inflating heavy layouts on the main thread.
+ *
+ * Every inflated binding becomes a view holder through [RecyclerView.Adapter.createViewHolder] and
+ * is put into the [RecyclerView.RecycledViewPool], whose capacity for the view type grows to fit.
+ *
+ * ```
+ * BindingPreInflater(recyclerView, adapter)
+ *     .preInflate(R.layout.item_product, 8)
+ *     .preInflate(R.layout.item_banner, 2, viewType = BANNER)
+ * ```
+ */
+class BindingPreInflater(
+	private val recyclerView: RecyclerView
+	, private val adapter: GenericRecyclerAdapter<*>
+)
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Constant
+	//---------------------------------------------------------------------------------------------------*/
+	companion object
+	{
+		// RecycledViewPool's own default capacity per view type
+		private const val DEFAULT_POOL_CAPACITY = 5
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	private val inflater = AsyncLayoutInflater(recyclerView.context)
+	private var isCancelled = false
+
+	// Pool capacity raised so far per view type
+	private val requested = HashMap<Int, Int>()
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Public
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * Queue [count] inflations of [layoutId], the layout [adapter] creates for [viewType].
+	 */
+	fun preInflate(@LayoutRes layoutId: Int, count: Int, viewType: Int = 0): BindingPreInflater
+	{
+		val total = (requested[viewType] ?: 0) + count
+		requested[viewType] = total
+
+		// The pool drops holders beyond its capacity
+		recyclerView.recycledViewPool.setMaxRecycledViews(viewType, max(DEFAULT_POOL_CAPACITY, total))
+
+		repeat(count) {
+			inflater.inflate(layoutId, recyclerView) { view, _, _ ->
+				if(isCancelled)
+					return@inflate
+
+				val binding = DataBindingUtil.bind<ViewDataBinding>(view)
+
+				if(binding == null)
+				{
+					"Layout $layoutId is not a data binding layout, nothing pre-inflated".logError()
+					return@inflate
+				}
+
+				// Goes through onCreateViewHolder, which takes the binding offered here
+				adapter.offerPreInflated(viewType, binding)
+				recyclerView.recycledViewPool.putRecycledView(adapter.createViewHolder(recyclerView, viewType))
+			}
+		}
+
+		return this
+	}
+
+	/**
+	 * Drop inflations still queued, e.g. when the screen is left before they finish.
+	 */
+	fun cancel()
+	{
+		isCancelled = true
+	}
+}
@@ -0,0 +1,93 @@
+package com.ownapp.core.view.recycler.generic
+
+/**
+ * Read-only list made of appended chunks, e.g. one per page.
+ *
+ * [appendChunk] copies only the new chunk, never the items already in the list, so appending page 50
+ * costs the same as appending page 2. Lookups binary search the chunk offsets and remember the last
+ * chunk hit, so sequential access like binding while scrolling is constant time.
+ */
+class ChunkedList<T>(initial: Collection<T> = emptyList()): AbstractList<T>(), RandomAccess
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	private val chunks = ArrayList<Array<Any?>>()
+
+	// Index of the first item of every chunk
+	private var offsets = IntArray(8)
+	private var total = 0
+	private var lastChunk = 0
+
+	override val size: Int
+		get() = total
+
+	val chunkCount: Int
+		get() = chunks.size
+
+	init
+	{
+		appendChunk(initial)
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Public
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * @return Position of the first appended item
+	 */
+	fun appendChunk(items: Collection<T>): Int
+	{
+		val start = total
+
+		if(items.isEmpty())
+			return start
+
+		if(chunks.size == offsets.size)
+			offsets = offsets.copyOf(offsets.size * 2)
+
+		offsets[chunks.size] = total
+		chunks.add(items.toTypedArray<Any?>())
+		total += items.size
+
+		return start
+	}
+
+	@Suppress("UNCHECKED_CAST")
+	override fun get(index: Int): T
+	{
+		if(index < 0 || index >= total)
+			throw IndexOutOfBoundsException("Index $index, size $total")
+
+		val chunk = chunkOf(index)
+		return chunks[chunk][index - offsets[chunk]] as T
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Private
+	//---------------------------------------------------------------------------------------------------*/
+	private fun chunkOf(index: Int): Int
+	{
+		val last = lastChunk
+
+		if(last < chunks.size && index >= offsets[last] && index < offsets[last] + chunks[last].size)
+			return last
+
+		var low = 0
+		var high = chunks.size - 1
+
+		while(low < high)
+		{
+			val middle = (low + high + 1) ushr 1
+
+			if(offsets[middle] <= index)
+				low = middle
+			else high = middle - 1
+		}
+
+		lastChunk = low
+		return low
+	}
+}
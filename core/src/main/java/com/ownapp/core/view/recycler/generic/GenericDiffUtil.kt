@@ -1,23 +1,45 @@
 package com.ownapp.core.view.recycler.generic
 
 import androidx.recyclerview.widget.DiffUtil
+import androidx.recyclerview.widget.RecyclerView
 
 class GenericDiffUtil<T: GenericRecyclerItem>: DiffUtil.ItemCallback<T>()
 {
     override fun areItemsTheSame(oldItem: T, newItem: T): Boolean
     {
-        return if(oldItem.identifier != null && newItem.identifier != null)
-            oldItem.identifier.toString() == newItem.identifier.toString()
-        else
-            oldItem == newItem
+        val oldIdentifier = oldItem.identifier
+        val newIdentifier = newItem.identifier
 
+        return when
+        {
+            hasStableIds(oldItem, newItem) -> oldItem.stableId == newItem.stableId
+            oldIdentifier != null && newIdentifier != null -> isSameIdentifier(oldIdentifier, newIdentifier)
+            else -> oldItem == newItem
+        }
     }
 
-    override fun areContentsTheSame(oldItem: T, newItem: T): Boolean
+    // Whichever way identity was decided, a changed item is rebound, with its payload when it has one
+    override fun areContentsTheSame(oldItem: T, newItem: T): Boolean = isSameContent(oldItem, newItem)
+
+    override fun getChangePayload(oldItem: T, newItem: T): Any?
     {
-        return if(oldItem.identifier != null && newItem.identifier != null)
-            oldItem.identifier.toString() == newItem.identifier.toString()
-        else
-            oldItem.toString() == newItem.toString()
+        return newItem.changedFields(oldItem)?.takeIf { it.isNotEmpty() }?.let { ChangePayload(it) }
     }
-}
\ No newline at end of file
+
+    private fun hasStableIds(oldItem: T, newItem: T): Boolean =
+        oldItem.stableId != RecyclerView.NO_ID && newItem.stableId != RecyclerView.NO_ID
+
+    // Different hashes settle most pairs, equal ones may collide and are confirmed by equals
+    private fun isSameContent(oldItem: T, newItem: T): Boolean =
+        oldItem.contentHash == newItem.contentHash && oldItem == newItem
+
+    // Only identifiers of different types, e.g. Int and Long, still go through toString()
+    private fun isSameIdentifier(oldIdentifier: Any, newIdentifier: Any): Boolean =
+        oldIdentifier == newIdentifier
+            || (oldIdentifier.javaClass != newIdentifier.javaClass && oldIdentifier.toString() == newIdentifier.toString())
+}
+
+/**
+ * Fields of an item that changed, see [GenericRecyclerItem.changedFields].
+ */
+class ChangePayload(val fields: Set<Int>)
@@ -1,5 +1,9 @@
 package com.ownapp.core.view.recycler.generic
 
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
+import android.util.SparseArray
 import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
@@ -7,47 +11,197 @@ import androidx.databinding.ViewDataBinding
 import androidx.recyclerview.widget.AsyncDifferConfig
 import androidx.recyclerview.widget.DiffUtil
 import androidx.recyclerview.widget.ListAdapter
+import androidx.recyclerview.widget.RecyclerView
 import com.ownapp.core.R
 import com.ownapp.core.extensions.utility.debug
 import com.ownapp.core.extensions.utility.prettyJson
 import com.ownapp.core.util.SnackbarUtil
+import java.util.concurrent.Executor
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 
-open class GenericRecyclerAdapter<T: GenericRecyclerItem>: ListAdapter<T, GenericViewHolder>
+open class GenericRecyclerAdapter<T: GenericRecyclerItem> private constructor(
+	private val timingExecutor: TimingDiffExecutor
+): ListAdapter<T, GenericViewHolder>(
+	AsyncDifferConfig.Builder<T>(GenericDiffUtil()).setBackgroundThreadExecutor(timingExecutor).build()
+)
 {
 	private lateinit var viewBinder: (LayoutInflater, ViewGroup, Boolean) -> ViewDataBinding
 	private lateinit var viewBinding: (parent: ViewGroup, viewType: Int) -> ViewDataBinding
 
 	constructor(
 		viewBinder: (LayoutInflater, ViewGroup, Boolean) -> ViewDataBinding
-	): super(AsyncDifferConfig.Builder<T>(GenericDiffUtil()).build())
+	): this(TimingDiffExecutor())
 	{
 		this.viewBinder = viewBinder
 	}
 	
 	constructor(
 		viewBinding: (parent: ViewGroup, viewType: Int) -> ViewDataBinding
-	): super(AsyncDifferConfig.Builder<T>(GenericDiffUtil()).build())
+	): this(TimingDiffExecutor())
 	{
 		this.viewBinding = viewBinding
 	}
 	
+	companion object
+	{
+		private const val DEFAULT_DIFF_THREADS = 2
+		
+		private val diffThreadCount = AtomicInteger()
+		
+		private val mainHandler by lazy { Handler(Looper.getMainLooper()) }
+		
+		/**
+		 * Runs the diffs of every generic adapter, so a screen full of adapters can't start more
+		 * concurrent diffs than it has threads. Change it before creating adapters, e.g. through
+		 * [setDiffThreads] in [android.app.Application.onCreate].
+		 */
+		@Volatile
+		var diffExecutor: Executor = createDiffExecutor(DEFAULT_DIFF_THREADS)
+		
+		/**
+		 * Called for every committed diff of every adapter without its own [diffListener], e.g. to log
+		 * the slow ones.
+		 */
+		@Volatile
+		var defaultDiffListener: DiffListener? = null
+		
+		fun setDiffThreads(count: Int)
+		{
+			require(count > 0) { "Diff needs at least one thread" }
+			diffExecutor = createDiffExecutor(count)
+		}
+		
+		private fun createDiffExecutor(count: Int): Executor = ThreadPoolExecutor(
+			count
+			, count
+			, 30L
+			, TimeUnit.SECONDS
+			, LinkedBlockingQueue()
+		) { runnable ->
+			Thread(runnable, "GenericDiff-${diffThreadCount.incrementAndGet()}").apply {
+				priority = Thread.NORM_PRIORITY - 1
+			}
+		}.apply { allowCoreThreadTimeOut(true) }
+	}
+	
 	interface ItemLifecycleListener<T: GenericRecyclerItem>
 	{
 		fun onItemCreated(holder: GenericViewHolder)
 		fun onItemAttached(holder: GenericViewHolder)
 		fun onItemDetached(holder: GenericViewHolder)
 	}
+	
+	/**
+	 * @param diffMillis Time spent computing the diff on the background thread
+	 * @param latencyMillis Time from [submitList] until the new list was committed, including waiting for a diff thread
+	 * @param updateCount Adapter notifications dispatched while the diff was pending, mostly its own updates
+	 */
+	data class DiffStats(
+		val oldSize: Int
+		, val newSize: Int
+		, val diffMillis: Long
+		, val latencyMillis: Long
+		, val updateCount: Int
+	)
+	
+	interface DiffListener
+	{
+		fun onDiffCommitted(adapter: GenericRecyclerAdapter<*>, stats: DiffStats)
+	}
+	
+	/**
+	 * Delegates to the shared [diffExecutor] and keeps how long the last diff took.
+	 */
+	private class TimingDiffExecutor: Executor
+	{
+		@Volatile
+		var lastDiffNanos = 0L
+			private set
+		
+		override fun execute(command: Runnable)
+		{
+			diffExecutor.execute {
+				val start = SystemClock.elapsedRealtimeNanos()
+				command.run()
+				lastDiffNanos = SystemClock.elapsedRealtimeNanos() - start
+			}
+		}
+	}
 
 	var onClickListener: GenericRecyclerItem.OnClickListener? = null
 	var onBindListener: GenericRecyclerItem.OnBindListener? = null
 	var itemLifecycleListener: ItemLifecycleListener<T>? = null
+	var diffListener: DiffListener? = null
+	
+	// The list the differ currently holds, appended to in place
+	private var committedList: ChunkedList<T>? = null
+	
+	// A superseded diff never commits, so only the latest submission counts
+	private var submitGeneration = 0
+	private var committedGeneration = 0
+	
+	private val isDiffPending: Boolean
+		get() = submitGeneration != committedGeneration
+	
+	private var updateCount = 0
+	
+	// Appends that came in while a diff was running, applied once it's committed
+	private val queuedAppends = ArrayList<List<T>>()
+	
+	// Ids of non-numeric identifiers, stable for the adapter's lifetime
+	private val stableIds = StableIdRegistry()
+	
+	// Item instance to position in the committed list, rebuilt on first use after a commit
+	private val positionIndex = PositionIndex<T>()
+	
+	// Bindings inflated off the main thread by a BindingPreInflater, per view type
+	private val preInflated = SparseArray<ArrayDeque<ViewDataBinding>>()
+	
+	// Binding class each view type was first created with, what tells apart the layouts in poolKey
+	private val bindingClasses = SparseArray<Class<*>>()
+	
+	// Shown instead of the differ's list, see submitWindowed
+	private var windowedList: WindowedList<T>? = null
+	
+	private val windowedCallback = object: WindowedList.Callback
+	{
+		override fun onRangeChanged(start: Int, count: Int)
+		{
+			val list = windowedList
+			
+			// Blocks load and evict from bind, when the list can't be notified yet
+			mainHandler.post {
+				if(windowedList === list)
+					notifyItemRangeChanged(start, count)
+			}
+		}
+	}
+	
+	init
+	{
+		registerAdapterDataObserver(object: RecyclerView.AdapterDataObserver()
+		{
+			override fun onChanged() { updateCount++ }
+			override fun onItemRangeChanged(positionStart: Int, itemCount: Int) { updateCount++ }
+			override fun onItemRangeChanged(positionStart: Int, itemCount: Int, payload: Any?) { updateCount++ }
+			override fun onItemRangeInserted(positionStart: Int, itemCount: Int) { updateCount++ }
+			override fun onItemRangeRemoved(positionStart: Int, itemCount: Int) { updateCount++ }
+			override fun onItemRangeMoved(fromPosition: Int, toPosition: Int, itemCount: Int) { updateCount++ }
+		})
+	}
 
 	override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): GenericViewHolder
 	{
-		(if(this::viewBinding.isInitialized)
+		(takePreInflated(viewType) ?: if(this::viewBinding.isInitialized)
 			viewBinding(parent, viewType)
 		else viewBinder(LayoutInflater.from(parent.context), parent, false)
 		).let {
+			if(bindingClasses.indexOfKey(viewType) < 0)
+				bindingClasses.put(viewType, it.javaClass)
+			
 			return GenericViewHolder(it).apply {
 				it.lifecycleOwner = this
 				markCreated()
@@ -58,19 +212,63 @@ open class GenericRecyclerAdapter<T: GenericRecyclerItem>: ListAdapter<T, Generi
 
 	override fun onBindViewHolder(holder: GenericViewHolder, position: Int)
 	{
-		getItemAt(position)?.let { item ->
+		if(bindWindowedPlaceholder(holder, position))
+			return
+		
+		prepareItem(holder, position).let { item ->
+			onBindListener?.onItemBind(item, position)
+			holder.bind(item)
+		}
+	}
+	
+	override fun onBindViewHolder(holder: GenericViewHolder, position: Int, payloads: MutableList<Any>)
+	{
+		// Anything but field changes, e.g. a plain notifyItemChanged, needs a full bind
+		if(payloads.isEmpty() || payloads.any { it !is ChangePayload })
+			return onBindViewHolder(holder, position)
+		
+		if(bindWindowedPlaceholder(holder, position))
+			return
+		
+		val fields = HashSet<Int>()
+		payloads.forEach { fields.addAll((it as ChangePayload).fields) }
+		
+		prepareItem(holder, position).let { item ->
+			onBindListener?.onItemBind(item, position)
+			
+			if(!holder.bindPayload(item, fields))
+				holder.bind(item)
+		}
+	}
+	
+	private fun prepareItem(holder: GenericViewHolder, position: Int): T
+	{
+		return getItemAt(position)?.also { item ->
 			item.holder = holder
 			item.adapterPosition = position
 			item.isFirst = position == 0
-			item.isLast = position == currentList.size - 1
+			item.isLast = position == itemCount - 1
 
 			if(item.onClickListener == null && onClickListener != null)
 				item.onClickListener = onClickListener
-
-			onBindListener?.onItemBind(item, position)
-			holder.bind(item)
 		} ?: error("Cannot find item in ${this::class.simpleName} at position $position")
 	}
+	
+	/**
+	 * @return True when [position] of the windowed list isn't loaded and got a placeholder
+	 */
+	private fun bindWindowedPlaceholder(holder: GenericViewHolder, position: Int): Boolean
+	{
+		val list = windowedList ?: return false
+		
+		list.loadAround(position)
+		
+		if(list[position] != null)
+			return false
+		
+		holder.bindPlaceholder()
+		return true
+	}
 
 	override fun onViewAttachedToWindow(holder: GenericViewHolder)
 	{
@@ -86,9 +284,160 @@ open class GenericRecyclerAdapter<T: GenericRecyclerItem>: ListAdapter<T, Generi
 		itemLifecycleListener?.onItemDetached(holder)
 	}
 	
-	override fun getItemId(position: Int): Long = currentList.getOrNull(position)?.identifier.toString().toLongOrNull() ?: position.toLong()
+	override fun getItemCount(): Int = windowedList?.size ?: super.getItemCount()
+	
+	override fun getItemId(position: Int): Long
+	{
+		val item = getItemAt(position) ?: return position.toLong()
+		
+		if(item.stableId != RecyclerView.NO_ID)
+			return item.stableId
+		
+		return item.identifier?.let { stableIds.idOf(it) } ?: position.toLong()
+	}
+	
+	fun getItemAt(position: Int): T? = (windowedList ?: currentList).getOrNull(position)
+	
+	/**
+	 * Adapters with the same key inflate the same layout for every view type, so their holders can
+	 * share a pool. By default the binding class each view type was first created with, `null` before
+	 * the first holder. Override it when view types created later could tell two adapters apart.
+	 */
+	open val poolKey: Any?
+		get() = if(bindingClasses.size() == 0) null else List(bindingClasses.size()) {
+			bindingClasses.keyAt(it) to bindingClasses.valueAt(it)
+		}
+	
+	/**
+	 * Hand a binding inflated ahead of time to the next [onCreateViewHolder] of [viewType].
+	 */
+	fun offerPreInflated(viewType: Int, binding: ViewDataBinding)
+	{
+		(preInflated[viewType] ?: ArrayDeque<ViewDataBinding>().also { preInflated.put(viewType, it) }).addLast(binding)
+	}
+	
+	private fun takePreInflated(viewType: Int): ViewDataBinding? = preInflated[viewType]?.removeFirstOrNull()
 	
-	fun getItemAt(position: Int): T? = currentList.getOrNull(position)
+	/**
+	 * Position of this exact instance in O(1), or of the first equal item when it isn't in the list.
+	 * @return -1 when not found
+	 */
+	fun positionOf(item: T): Int = positionIndex.positionOf(item, currentList)
+	
+	override fun submitList(list: List<T>?) = submitList(list, null)
+	
+	/**
+	 * A [ChunkedList] is shown as is instead of being copied, [append] then adds to it in place.
+	 */
+	@Suppress("UNCHECKED_CAST")
+	override fun submitList(list: List<T>?, commitCallback: Runnable?)
+	{
+		// Nothing to diff, the same as the differ does for the list it holds
+		if(windowedList == null && !isDiffPending && list != null && (list === committedList || list === currentList))
+		{
+			commitCallback?.run()
+			return
+		}
+		
+		leaveWindowed()
+		
+		// Appends queued for a list that will never commit would land on this one
+		queuedAppends.clear()
+		
+		val chunkedList = list as? ChunkedList<T> ?: list?.let { ChunkedList(it) }
+		val generation = ++submitGeneration
+		val oldSize = currentList.size
+		val submitted = SystemClock.elapsedRealtime()
+		val updatesBefore = updateCount
+		
+		// Not measured when the differ commits without diffing, i.e. one of the lists is empty
+		val isDiffed = oldSize > 0 && !chunkedList.isNullOrEmpty()
+		
+		super.submitList(chunkedList) {
+			committedGeneration = generation
+			committedList = chunkedList
+			positionIndex.invalidate()
+			
+			if(isDiffed)
+				reportDiff(oldSize, chunkedList?.size ?: 0, submitted, updateCount - updatesBefore)
+			
+			commitCallback?.run()
+			
+			if(!isDiffPending && queuedAppends.isNotEmpty())
+			{
+				val appends = ArrayList(queuedAppends)
+				queuedAppends.clear()
+				appends.forEach { append(it) }
+			}
+		}
+	}
+	
+	/**
+	 * Show [list] without diffing, only its loaded blocks hold items and the rest is bound as
+	 * placeholders through [GenericViewHolder.bindPlaceholder]. Binding a position loads the blocks
+	 * around it.
+	 *
+	 * The item operations of this adapter, e.g. [append] or [removeItem], work on lists given to
+	 * [submitList], which also ends the windowed list.
+	 */
+	fun submitWindowed(list: WindowedList<T>)
+	{
+		if(windowedList === list)
+			return
+		
+		leaveWindowed()
+		
+		// Drop the differ's list, a diff in flight won't commit over the windowed one then
+		if(currentList.isNotEmpty() || isDiffPending)
+			super.submitList(null)
+		
+		committedGeneration = ++submitGeneration
+		committedList = null
+		positionIndex.invalidate()
+		queuedAppends.clear()
+		
+		windowedList = list
+		list.callback = windowedCallback
+		notifyItemRangeInserted(0, list.size)
+	}
+	
+	private fun leaveWindowed()
+	{
+		val list = windowedList ?: return
+		
+		list.callback = null
+		windowedList = null
+		notifyItemRangeRemoved(0, list.size)
+	}
+	
+	/**
+	 * Add [items] at the end without diffing or copying the items already shown, only the new range
+	 * is inserted and the former last item rebound for its [GenericRecyclerItem.isLast].
+	 *
+	 * Meant for paging, must be called on the main thread.
+	 */
+	fun append(items: List<T>?)
+	{
+		if(items.isNullOrEmpty())
+			return
+		
+		// The differ may be reading the current list on its background thread
+		if(isDiffPending)
+		{
+			queuedAppends.add(items.toList())
+			return
+		}
+		
+		val list = committedList ?: return submitList(items)
+		val start = list.appendChunk(items)
+		
+		positionIndex.onAppended(start, items)
+		
+		notifyItemRangeInserted(start, items.size)
+		
+		if(start > 0)
+			notifyItemChanged(start - 1)
+	}
 	
 	fun onItemClick(onItemClick: (item: T, view: View) -> Unit = { _, _ -> })
 	{
@@ -128,7 +477,7 @@ open class GenericRecyclerAdapter<T: GenericRecyclerItem>: ListAdapter<T, Generi
 		}
 	}
 	
-	fun setLifecycleDestroyed() = currentList.forEach { it.holder?.markDestroyed() }
+	fun setLifecycleDestroyed() = (windowedList ?: currentList).forEach { it?.holder?.markDestroyed() }
 
 	// @Deprecated("This having some issue. Use back original submitList instead", replaceWith = ReplaceWith("submitList"))
 	// fun submit(
@@ -141,25 +490,34 @@ open class GenericRecyclerAdapter<T: GenericRecyclerItem>: ListAdapter<T, Generi
 	// 	else add(list)
 	// }
 	
-	fun replace(list: List<T>?)
+	private fun reportDiff(oldSize: Int, newSize: Int, submitted: Long, updates: Int)
 	{
-		super.submitList(list?.toMutableList() ?: mutableListOf())
-		notifyDataSetChanged()
+		val listener = diffListener ?: defaultDiffListener ?: return
+		
+		listener.onDiffCommitted(
+			this
+			, DiffStats(
+				oldSize
+				, newSize
+				, TimeUnit.NANOSECONDS.toMillis(timingExecutor.lastDiffNanos)
+				, SystemClock.elapsedRealtime() - submitted
+				, updates
+			)
+		)
 	}
-
-	fun add(list: List<T>?)
+	
+	fun onDiffCommitted(onDiffCommitted: (stats: DiffStats) -> Unit = { _ -> })
 	{
-		if(!list.isNullOrEmpty())
+		diffListener = object: DiffListener
 		{
-			currentList.toMutableList().run {
-				addAll(list)
-				super.submitList(this)
-			}
-
-			notifyDataSetChanged()
+			override fun onDiffCommitted(adapter: GenericRecyclerAdapter<*>, stats: DiffStats) = onDiffCommitted(stats)
 		}
 	}
 	
+	fun replace(list: List<T>?) = submitList(list ?: emptyList())
+
+	fun add(list: List<T>?) = append(list)
+	
 	fun addItem(item: T, position: Int = -1)
 	{
 		currentList.toMutableList().run {
@@ -167,29 +525,61 @@ open class GenericRecyclerAdapter<T: GenericRecyclerItem>: ListAdapter<T, Generi
 				add(position, item)
 			else add(item)
 
-			super.submitList(this)
+			submitList(this)
 		}
 	}
 	
 	fun removeItem(position: Int) = currentList.getOrNull(position)?.let { removeItem(it) }
 	
-	fun removeItem(item: T)
+	fun removeItem(item: T) = removeAll(listOf(item))
+	
+	/**
+	 * Remove every item in [items] with a single submission.
+	 */
+	fun removeAll(items: Collection<T>)
 	{
-		if(currentList.any { it == item })
-		{
-			currentList.toMutableList().let { list ->
-				list.find { it == item }?.let {
-					val position = list.indexOf(it)
-
-					list.remove(it)
-					list.filter { my -> my.adapterPosition > position }.forEach { my ->
-						my.adapterPosition--
-					}
-
-					super.submitList(list)
-				}
+		if(items.isEmpty() || currentList.isEmpty())
+			return
+		
+		val removed = BooleanArray(currentList.size)
+		
+		items.forEach { item ->
+			positionOf(item).let { if(it >= 0) removed[it] = true }
+		}
+		
+		submitRemoval(removed)
+	}
+	
+	/**
+	 * Remove every item matching [predicate] with a single submission.
+	 */
+	fun removeItems(predicate: (T) -> Boolean)
+	{
+		if(currentList.isEmpty())
+			return
+		
+		submitRemoval(BooleanArray(currentList.size) { predicate(currentList[it]) })
+	}
+	
+	private fun submitRemoval(removed: BooleanArray)
+	{
+		val count = removed.count { it }
+		
+		if(count == 0)
+			return
+		
+		val list = ArrayList<T>(currentList.size - count)
+		
+		currentList.forEachIndexed { position, item ->
+			if(!removed[position])
+			{
+				// Shift the positions the items remember, until they are rebound
+				item.adapterPosition = list.size
+				list.add(item)
 			}
 		}
+		
+		submitList(list)
 	}
 
 //	fun removeItemWithUndo(position: Int, view: View)
@@ -207,5 +597,5 @@ open class GenericRecyclerAdapter<T: GenericRecyclerItem>: ListAdapter<T, Generi
 
 	fun clear() = submitList(null)
 
-	fun notifyItemChanged(item: T) = notifyItemChanged(currentList.indexOf(item))
+	fun notifyItemChanged(item: T) = positionOf(item).let { if(it >= 0) notifyItemChanged(it) }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.ownapp.core.view.recycler.generic
 
 import android.view.View
 import androidx.databinding.ViewDataBinding
+import androidx.recyclerview.widget.RecyclerView
 import androidx.room.Ignore
 import kotlinx.parcelize.IgnoredOnParcel
 
@@ -21,6 +22,38 @@ abstract class GenericRecyclerItem
     open val identifier: Any?
         get() = null
 
+    /**
+     * Primitive identity, when set the diff and [RecyclerView.Adapter.getItemId] use it instead of
+     * [identifier].
+     */
+    @get:Ignore @IgnoredOnParcel
+    open val stableId: Long
+        get() = RecyclerView.NO_ID
+
+    @Transient @Ignore @IgnoredOnParcel
+    private var cachedContentHash: Int = 0
+
+    @Transient @Ignore @IgnoredOnParcel
+    private var isContentHashed: Boolean = false
+
+    /**
+     * Hash of what the item displays, computed once by [computeContentHash] and compared by the diff
+     * instead of building [toString] for both items, only items with equal hashes are compared with
+     * [equals]. Call [invalidateContentHash] after mutating an item.
+     */
+    @get:Ignore @IgnoredOnParcel
+    val contentHash: Int
+        get()
+        {
+            if(!isContentHashed)
+            {
+                cachedContentHash = computeContentHash()
+                isContentHashed = true
+            }
+
+            return cachedContentHash
+        }
+
     @Transient @Ignore @IgnoredOnParcel
     var holder: GenericViewHolder? = null
 
@@ -40,4 +73,30 @@ abstract class GenericRecyclerItem
     open var isLast: Boolean = false
     
     open fun initialize() {}
+
+    /**
+     * Data classes hash their constructor properties without allocating, override for anything else
+     * together with an [equals] comparing the same properties.
+     */
+    protected open fun computeContentHash(): Int = hashCode()
+
+    fun invalidateContentHash()
+    {
+        isContentHashed = false
+    }
+
+    /**
+     * Ids of the fields, e.g. `BR` ids, that differ from [old], the diff sends them as a change payload.
+     * `null` or empty when unknown, the row is then fully rebound.
+     */
+    open fun changedFields(old: GenericRecyclerItem): Set<Int>? = null
+
+    /**
+     * Update only the views of [fields] instead of re-evaluating every binding expression, through
+     * layout variables of their own, e.g. `binding.setVariable(BR.progress, progress)`. The layout's
+     * `item` variable keeps the instance of the last full bind, so expressions and handlers reading
+     * it see the old values until then.
+     * @return False to fall back to a full bind
+     */
+    open fun onBindPayload(binding: ViewDataBinding, fields: Set<Int>): Boolean = false
 }
\ No newline at end of file
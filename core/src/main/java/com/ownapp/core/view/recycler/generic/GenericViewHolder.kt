@@ -54,4 +54,25 @@ class GenericViewHolder(val binding: ViewDataBinding): RecyclerView.ViewHolder(b
         binding.setVariable(BR.item, item)
         binding.executePendingBindings()
     }
+
+    /**
+     * @return False when [item] couldn't apply [fields] on its own and needs a full [bind]
+     */
+    fun bindPayload(item: GenericRecyclerItem, fields: Set<Int>): Boolean
+    {
+        if(!item.onBindPayload(binding, fields))
+            return false
+
+        binding.executePendingBindings()
+        return true
+    }
+
+    /**
+     * Binds a position of a [WindowedList] not loaded yet, the layout shows its `item == null` state
+     */
+    fun bindPlaceholder()
+    {
+        binding.setVariable(BR.item, null)
+        binding.executePendingBindings()
+    }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package com.ownapp.core.view.recycler.generic
+
+import java.util.IdentityHashMap
+
+/**
+ * Position of an item instance in a list in O(1), built on the first lookup after [invalidate] and
+ * kept in sync by [onAppended] instead of being rebuilt for every page.
+ *
+ * An instance found more than once maps to its first position. Not thread safe, meant to be used from
+ * the main thread like the adapter owning the list.
+ */
+class PositionIndex<T>
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	private var positions: IdentityHashMap<T, Int>? = null
+
+	internal val isBuilt: Boolean
+		get() = positions != null
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Public
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * Position of this exact instance in [list], or of the first equal item when it isn't in it.
+	 * @return -1 when not found
+	 */
+	fun positionOf(item: T, list: List<T>): Int
+	{
+		val index = positions ?: IdentityHashMap<T, Int>(list.size).also { index ->
+			list.forEachIndexed { position, it -> index.putIfAbsent(it, position) }
+			positions = index
+		}
+
+		return index[item] ?: list.indexOf(item)
+	}
+
+	/**
+	 * [items] were added to the end of the list at [start].
+	 */
+	fun onAppended(start: Int, items: List<T>)
+	{
+		positions?.let { index -> items.forEachIndexed { offset, item -> index.putIfAbsent(item, start + offset) } }
+	}
+
+	/**
+	 * The list was replaced, the next lookup indexes it again.
+	 */
+	fun invalidate()
+	{
+		positions = null
+	}
+}
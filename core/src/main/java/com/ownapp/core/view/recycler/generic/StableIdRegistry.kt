@@ -0,0 +1,41 @@
+package com.ownapp.core.view.recycler.generic
+
+import androidx.recyclerview.widget.RecyclerView
+
+/**
+ * Gives arbitrary identifiers, e.g. UUIDs or SKUs, a stable [Long] id for
+ * [RecyclerView.Adapter.getItemId].
+ *
+ * Int and Long identifiers of 0 or more are their own id. Anything else is looked up by its own
+ * equals and hashCode, without building a String, and assigned the next free negative id counting
+ * down from -2, so it can never collide with a numeric identifier or [RecyclerView.NO_ID]. An assigned
+ * id is kept for the registry's lifetime, whatever lists come and go.
+ *
+ * Not thread safe, meant to be used from the main thread like [RecyclerView.Adapter.getItemId].
+ */
+class StableIdRegistry
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	private val ids = HashMap<Any, Long>()
+	private var nextId = RecyclerView.NO_ID - 1
+
+	val size: Int
+		get() = ids.size
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Public
+	//---------------------------------------------------------------------------------------------------*/
+	fun idOf(identifier: Any): Long
+	{
+		when(identifier)
+		{
+			is Long -> if(identifier >= 0) return identifier
+			is Int -> if(identifier >= 0) return identifier.toLong()
+		}
+
+		return ids[identifier] ?: nextId--.also { ids[identifier] = it }
+	}
+}
@@ -0,0 +1,160 @@
+package com.ownapp.core.view.recycler.generic
+
+import kotlin.math.abs
+import kotlin.math.min
+
+/**
+ * List of [totalCount] items of which only the blocks around the last [loadAround] position are in
+ * memory, every other position reads as `null` and is shown as a placeholder.
+ *
+ * Blocks of [blockSize] items are requested through [loadBlock] and answered with [setItems], the
+ * ones furthest from the position are dropped once more than [maxBlocks] are held. For catalogs too
+ * large to keep every item of, see [GenericRecyclerAdapter.submitWindowed].
+ *
+ * ```
+ * val list = WindowedList<Product>(response.total) { start, count ->
+ *     lifecycleScope.launch { list.setItems(start, repository.products(start, count)) }
+ * }
+ * ```
+ *
+ * Only to be used from the main thread.
+ *
+ * @param prefetchBlocks Blocks requested on each side of the one being shown
+ */
+class WindowedList<T: Any>(
+	val totalCount: Int
+	, val blockSize: Int = DEFAULT_BLOCK_SIZE
+	, val maxBlocks: Int = DEFAULT_MAX_BLOCKS
+	, val prefetchBlocks: Int = 1
+	, private val loadBlock: (start: Int, count: Int) -> Unit
+): AbstractList<T?>(), RandomAccess
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Constant
+	//---------------------------------------------------------------------------------------------------*/
+	companion object
+	{
+		const val DEFAULT_BLOCK_SIZE = 50
+		const val DEFAULT_MAX_BLOCKS = 8
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Class
+	//---------------------------------------------------------------------------------------------------*/
+	interface Callback
+	{
+		/**
+		 * Items in the range were loaded or dropped.
+		 */
+		fun onRangeChanged(start: Int, count: Int)
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	private val blocks = HashMap<Int, Array<Any?>>()
+	private val requested = HashSet<Int>()
+
+	// Block of the last loadAround, binding the same block again needs no work
+	private var centerBlock = -1
+
+	internal var callback: Callback? = null
+
+	override val size: Int
+		get() = totalCount
+
+	val loadedBlockCount: Int
+		get() = blocks.size
+
+	init
+	{
+		require(blockSize > 0) { "Block size must be positive" }
+		require(maxBlocks > 2 * prefetchBlocks) { "$maxBlocks blocks can't hold the ones prefetched around a position" }
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Public
+	//---------------------------------------------------------------------------------------------------*/
+	@Suppress("UNCHECKED_CAST")
+	override fun get(index: Int): T?
+	{
+		if(index < 0 || index >= totalCount)
+			throw IndexOutOfBoundsException("Index $index, size $totalCount")
+
+		return blocks[index / blockSize]?.get(index % blockSize) as T?
+	}
+
+	fun isLoaded(index: Int): Boolean = blocks.containsKey(index / blockSize)
+
+	/**
+	 * Request the blocks around [position] not loaded yet and drop the furthest ones.
+	 */
+	fun loadAround(position: Int)
+	{
+		val center = position / blockSize
+
+		if(center == centerBlock)
+			return
+
+		centerBlock = center
+
+		val lastBlock = (totalCount - 1) / blockSize
+
+		for(block in (center - prefetchBlocks).coerceAtLeast(0)..(center + prefetchBlocks).coerceAtMost(lastBlock))
+		{
+			if(!blocks.containsKey(block) && requested.add(block))
+				loadBlock(block * blockSize, lengthOf(block))
+		}
+
+		evict()
+	}
+
+	/**
+	 * Answer to [loadBlock], [start] being the start it was called with.
+	 */
+	fun setItems(start: Int, items: List<T>)
+	{
+		require(start % blockSize == 0) { "$start isn't the start of a block" }
+
+		val block = start / blockSize
+		val length = min(lengthOf(block), items.size)
+
+		requested.remove(block)
+		blocks[block] = Array(lengthOf(block)) { if(it < length) items[it] else null }
+		callback?.onRangeChanged(start, lengthOf(block))
+
+		evict()
+	}
+
+	/**
+	 * The block at [start] couldn't be loaded, it is requested again by the next [loadAround] of it.
+	 */
+	fun onLoadFailed(start: Int)
+	{
+		requested.remove(start / blockSize)
+		centerBlock = -1
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Private
+	//---------------------------------------------------------------------------------------------------*/
+	private fun lengthOf(block: Int): Int = min(blockSize, totalCount - block * blockSize)
+
+	private fun evict()
+	{
+		if(blocks.size <= maxBlocks || centerBlock < 0)
+			return
+
+		blocks.keys
+			.sortedByDescending { abs(it - centerBlock) }
+			.take(blocks.size - maxBlocks)
+			.forEach { block ->
+				blocks.remove(block)
+				callback?.onRangeChanged(block * blockSize, lengthOf(block))
+			}
+	}
+}
@@ -0,0 +1,213 @@
+package com.ownapp.core.view.fragment.recycler
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.async
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.yield
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class PageLoaderTest
+{
+	// Pages of three items, page 5 holding 50, 51 and 52
+	private class Source(private val lastPage: Int = Int.MAX_VALUE)
+	{
+		val fetches = ArrayList<Int>()
+		var failures = 0
+
+		suspend fun fetch(page: Int): List<Int>?
+		{
+			fetches.add(page)
+
+			if(failures > 0)
+			{
+				failures--
+				throw IllegalStateException("Offline")
+			}
+
+			return if(page > lastPage) emptyList() else List(3) { page * 10 + it }
+		}
+	}
+
+	private fun CoroutineScope.loader(source: Source, config: PageLoader.Config = PageLoader.Config(prefetchDistance = 0)) =
+		PageLoader(this, config) { source.fetch(it) }
+
+	@Test
+	fun loadNext_appendsPagesInOrder()
+	{
+		runBlocking {
+			val loader = loader(Source())
+
+			assertEquals(listOf(10, 11, 12), loader.loadNext())
+			assertEquals(listOf(20, 21, 22), loader.loadNext())
+
+			assertEquals(listOf(10, 11, 12, 20, 21, 22), loader.items)
+			assertEquals(2, loader.pageCount)
+			assertEquals(3, loader.nextPage)
+		}
+	}
+
+	@Test
+	fun loadNext_stopsAfterEmptyPage()
+	{
+		runBlocking {
+			val source = Source(lastPage = 1)
+			val loader = loader(source)
+
+			loader.loadNext()
+
+			assertEquals(emptyList<Int>(), loader.loadNext())
+			assertTrue(loader.isEndReached)
+			assertEquals(emptyList<Int>(), loader.loadNext())
+			assertEquals(listOf(1, 2), source.fetches)
+		}
+	}
+
+	@Test
+	fun maxPages_dropsOldestPageAndKeepsPaging()
+	{
+		runBlocking {
+			val loader = loader(Source(), PageLoader.Config(prefetchDistance = 0, maxPages = 2))
+
+			repeat(4) { loader.loadNext() }
+
+			assertEquals(listOf(50, 51, 52), loader.loadNext())
+			assertEquals(listOf(40, 41, 42, 50, 51, 52), loader.items)
+			assertEquals(2, loader.pageCount)
+			assertEquals(4, loader.firstLoadedPage)
+			assertEquals(6, loader.nextPage)
+		}
+	}
+
+	@Test
+	fun prefetch_isServedFromCache()
+	{
+		runBlocking {
+			val source = Source()
+			val loader = loader(source, PageLoader.Config(prefetchDistance = 2, maxPages = 1))
+
+			loader.loadNext()
+			loader.loadNext()
+			loader.loadNext()
+
+			// Lets the prefetches started by the last page run
+			yield()
+
+			// Never capped by maxPages, which only bounds the pages kept
+			assertEquals(listOf(1, 2, 3, 4, 5), source.fetches.sorted())
+			assertEquals(listOf(30, 31, 32), loader.items)
+		}
+	}
+
+	@Test
+	fun load_sharesRequestInFlight()
+	{
+		runBlocking {
+			val source = Source()
+			val loader = loader(source)
+
+			val first = async { loader.loadNext() }
+			val second = async { loader.loadNext() }
+
+			assertEquals(listOf(10, 11, 12), first.await())
+			assertEquals(emptyList<Int>(), second.await())
+			assertEquals(listOf(1), source.fetches)
+			assertEquals(1, loader.pageCount)
+		}
+	}
+
+	@Test
+	fun fetch_isRetriedThenReportedAsFailed()
+	{
+		runBlocking {
+			val source = Source().apply { failures = 2 }
+			val loader = loader(source, PageLoader.Config(prefetchDistance = 0, maxRetries = 2, retryDelayMillis = 1L))
+
+			assertEquals(listOf(10, 11, 12), loader.loadNext())
+
+			source.failures = 3
+
+			assertNull(loader.loadNext())
+			assertEquals(1, loader.pageCount)
+			assertEquals(2, loader.nextPage)
+		}
+	}
+
+	@Test
+	fun replace_updatesItemsInPlace()
+	{
+		runBlocking {
+			val loader = loader(Source())
+
+			repeat(3) { loader.loadNext() }
+
+			assertTrue(loader.replace(2, listOf(7)))
+			assertEquals(listOf(10, 11, 12, 7, 30, 31, 32), loader.items)
+			assertFalse(loader.replace(2, listOf(7)))
+			assertFalse(loader.replace(4, listOf(7)))
+		}
+	}
+
+	@Test
+	fun replace_withEmptyPageEndsListThere()
+	{
+		runBlocking {
+			val loader = loader(Source())
+
+			repeat(3) { loader.loadNext() }
+
+			assertTrue(loader.replace(2, emptyList()))
+			assertEquals(listOf(10, 11, 12), loader.items)
+			assertTrue(loader.isEndReached)
+			assertEquals(emptyList<Int>(), loader.loadNext())
+		}
+	}
+
+	@Test
+	fun replace_ignoresDroppedPage()
+	{
+		runBlocking {
+			val loader = loader(Source(), PageLoader.Config(prefetchDistance = 0, maxPages = 2))
+
+			repeat(3) { loader.loadNext() }
+
+			assertFalse(loader.replace(1, listOf(7)))
+			assertTrue(loader.replace(3, listOf(7)))
+			assertEquals(listOf(20, 21, 22, 7), loader.items)
+		}
+	}
+
+	@Test
+	fun seed_keepsLastMaxPages()
+	{
+		runBlocking {
+			val loader = loader(Source(), PageLoader.Config(prefetchDistance = 0, maxPages = 2))
+
+			loader.seed(listOf(listOf(1), listOf(2), listOf(3)))
+
+			assertEquals(listOf(2, 3), loader.items)
+			assertEquals(2, loader.firstLoadedPage)
+			assertEquals(listOf(40, 41, 42), loader.loadNext())
+		}
+	}
+
+	@Test
+	fun invalidate_startsOverFromFirstPage()
+	{
+		runBlocking {
+			val source = Source()
+			val loader = loader(source, PageLoader.Config(prefetchDistance = 0, maxPages = 1))
+
+			repeat(3) { loader.loadNext() }
+			loader.invalidate()
+
+			assertTrue(loader.items.isEmpty())
+			assertEquals(1, loader.nextPage)
+			assertEquals(listOf(10, 11, 12), loader.loadNext())
+			assertEquals(listOf(1, 2, 3, 1), source.fetches)
+		}
+	}
+}
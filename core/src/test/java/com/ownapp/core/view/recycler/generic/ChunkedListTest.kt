@@ -0,0 +1,84 @@
+package com.ownapp.core.view.recycler.generic
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ChunkedListTest
+{
+	@Test
+	fun appendChunk_returnsStartOfChunk()
+	{
+		val list = ChunkedList(listOf(0, 1, 2))
+
+		assertEquals(3, list.appendChunk(listOf(3, 4)))
+		assertEquals(5, list.appendChunk(listOf(5)))
+		assertEquals(listOf(0, 1, 2, 3, 4, 5), list)
+		assertEquals(3, list.chunkCount)
+	}
+
+	@Test
+	fun appendChunk_ignoresEmptyChunk()
+	{
+		val list = ChunkedList<Int>()
+
+		assertEquals(0, list.appendChunk(emptyList()))
+		assertEquals(0, list.chunkCount)
+		assertTrue(list.isEmpty())
+
+		list.appendChunk(listOf(1))
+
+		assertEquals(1, list.appendChunk(emptyList()))
+		assertEquals(1, list.chunkCount)
+	}
+
+	@Test
+	fun appendChunk_copiesItems()
+	{
+		val page = arrayListOf("a", "b")
+		val list = ChunkedList(page)
+
+		page[0] = "changed"
+		page.add("c")
+
+		assertEquals(listOf("a", "b"), list)
+	}
+
+	@Test
+	fun get_matchesFlatListAcrossManyChunks()
+	{
+		val list = ChunkedList<Int>()
+		val expected = ArrayList<Int>()
+
+		// More chunks than the initial offsets hold, of uneven sizes
+		for(chunk in 1..40)
+		{
+			val items = List(chunk % 7 + 1) { expected.size + it }
+
+			assertEquals(expected.size, list.appendChunk(items))
+			expected.addAll(items)
+		}
+
+		assertEquals(expected.size, list.size)
+		assertEquals(expected, list)
+
+		// Backwards and jumping, not only the sequential access the last chunk hit is made for
+		for(index in expected.indices.reversed())
+			assertEquals(expected[index], list[index])
+
+		for(index in expected.indices.shuffled(java.util.Random(7)))
+			assertEquals(expected[index], list[index])
+	}
+
+	@Test(expected = IndexOutOfBoundsException::class)
+	fun get_outOfBoundsThrows()
+	{
+		ChunkedList(listOf(1, 2)).apply { appendChunk(listOf(3)) }[3]
+	}
+
+	@Test(expected = IndexOutOfBoundsException::class)
+	fun get_negativeThrows()
+	{
+		ChunkedList(listOf(1))[-1]
+	}
+}
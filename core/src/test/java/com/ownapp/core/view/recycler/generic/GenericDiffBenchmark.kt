@@ -0,0 +1,121 @@
+package com.ownapp.core.view.recycler.generic
+
+import androidx.recyclerview.widget.DiffUtil
+import org.junit.Test
+
+/**
+ * Diff of a 10k item list with a few changed, moved and removed rows, through the toString
+ * comparison [GenericDiffUtil] used to do and through its stable ids and content hashes.
+ */
+class GenericDiffBenchmark
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Constant
+	//---------------------------------------------------------------------------------------------------*/
+	companion object
+	{
+		private const val ITEMS = 10_000
+		private const val WARMUP_ROUNDS = 5
+		private const val ROUNDS = 10
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Class
+	//---------------------------------------------------------------------------------------------------*/
+	private data class Product(
+		val id: Long
+		, val title: String
+		, val description: String
+		, val price: Int
+	): GenericRecyclerItem()
+	{
+		override val stableId: Long
+			get() = id
+	}
+
+	// The callback before stable ids and content hashes
+	private class ToStringDiffUtil<T: GenericRecyclerItem>: DiffUtil.ItemCallback<T>()
+	{
+		override fun areItemsTheSame(oldItem: T, newItem: T): Boolean = oldItem == newItem
+
+		override fun areContentsTheSame(oldItem: T, newItem: T): Boolean = oldItem.toString() == newItem.toString()
+	}
+
+	private class ListCallback<T>(
+		private val oldList: List<T>
+		, private val newList: List<T>
+		, private val callback: DiffUtil.ItemCallback<T>
+	): DiffUtil.Callback()
+	{
+		override fun getOldListSize(): Int = oldList.size
+		override fun getNewListSize(): Int = newList.size
+		override fun areItemsTheSame(oldPosition: Int, newPosition: Int): Boolean = callback.areItemsTheSame(oldList[oldPosition], newList[newPosition])
+		override fun areContentsTheSame(oldPosition: Int, newPosition: Int): Boolean = callback.areContentsTheSame(oldList[oldPosition], newList[newPosition])
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	private val oldList = List(ITEMS) { product(it, 0) }
+
+	// Every 100th row changed, every 250th removed and the last ten moved to the top
+	private val newList = (oldList.takeLast(10) + oldList.dropLast(10))
+		.filterIndexed { index, _ -> index % 250 != 0 }
+		.map { if(it.id % 100 == 0L) product(it.id.toInt(), 1) else product(it.id.toInt(), 0) }
+
+	// Written once per measurement so the JIT can't drop the diffs feeding it
+	@Volatile
+	private var blackhole = 0
+
+
+	@Test
+	fun diff_toStringAgainstHashed()
+	{
+		val toString = measure(ToStringDiffUtil())
+		val hashed = measure(GenericDiffUtil())
+
+		println("Diff of $ITEMS items: toString %.1f ms, hashed %.1f ms".format(toString, hashed))
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Private
+	//---------------------------------------------------------------------------------------------------*/
+	private fun product(id: Int, revision: Int) = Product(
+		id.toLong()
+		, "Product $id rev $revision"
+		, "Description of product $id, long enough to make building its string noticeable"
+		, id * 10 + revision
+	)
+
+	/**
+	 * @return Milliseconds per diff
+	 */
+	private fun measure(callback: DiffUtil.ItemCallback<Product>): Double
+	{
+		var sink = 0
+
+		repeat(WARMUP_ROUNDS) { sink += diff(callback) }
+
+		val start = System.nanoTime()
+		repeat(ROUNDS) { sink += diff(callback) }
+		val elapsed = System.nanoTime() - start
+
+		blackhole = sink
+		return elapsed / 1_000_000.0 / ROUNDS
+	}
+
+	/**
+	 * Fresh instances for every diff, like a list mapped again from a response, so no content hash is
+	 * left over from the previous round.
+	 */
+	private fun diff(callback: DiffUtil.ItemCallback<Product>): Int
+	{
+		val old = oldList.map { it.copy() }
+		val new = newList.map { it.copy() }
+
+		return DiffUtil.calculateDiff(ListCallback(old, new, callback)).hashCode()
+	}
+}
@@ -0,0 +1,165 @@
+package com.ownapp.core.view.recycler.generic
+
+import androidx.recyclerview.widget.DiffUtil
+import androidx.recyclerview.widget.ListUpdateCallback
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class GenericDiffUtilTest
+{
+	private data class Product(val id: Long, val title: String): GenericRecyclerItem()
+	{
+		override val stableId: Long
+			get() = id
+	}
+
+	private data class Tag(val key: Any, val label: String): GenericRecyclerItem()
+	{
+		override val identifier: Any
+			get() = key
+	}
+
+	private data class Note(val text: String): GenericRecyclerItem()
+
+	// Every instance hashes alike, so only equals tells them apart
+	private data class Colliding(val text: String): GenericRecyclerItem()
+	{
+		override fun computeContentHash(): Int = 0
+	}
+
+	private data class Titled(val id: Long, val title: String, val price: Int): GenericRecyclerItem()
+	{
+		override val stableId: Long
+			get() = id
+
+		override fun changedFields(old: GenericRecyclerItem): Set<Int>?
+		{
+			old as Titled
+			return setOfNotNull(TITLE.takeIf { title != old.title }, PRICE.takeIf { price != old.price })
+		}
+
+		companion object
+		{
+			const val TITLE = 1
+			const val PRICE = 2
+		}
+	}
+
+	@Test
+	fun stableIds_decideIdentity()
+	{
+		val diff = GenericDiffUtil<Product>()
+
+		assertTrue(diff.areItemsTheSame(Product(1L, "Tea"), Product(1L, "Green tea")))
+		assertFalse(diff.areItemsTheSame(Product(1L, "Tea"), Product(2L, "Tea")))
+	}
+
+	@Test
+	fun stableIds_compareContent()
+	{
+		val diff = GenericDiffUtil<Product>()
+
+		assertTrue(diff.areContentsTheSame(Product(1L, "Tea"), Product(1L, "Tea")))
+		assertFalse(diff.areContentsTheSame(Product(1L, "Tea"), Product(1L, "Green tea")))
+	}
+
+	@Test
+	fun identifiers_ofDifferentTypesMatchByText()
+	{
+		val diff = GenericDiffUtil<Tag>()
+
+		assertTrue(diff.areItemsTheSame(Tag(7, "a"), Tag(7L, "b")))
+		assertTrue(diff.areItemsTheSame(Tag("7", "a"), Tag("7", "b")))
+		assertFalse(diff.areItemsTheSame(Tag(7, "a"), Tag(8, "a")))
+	}
+
+	@Test
+	fun identifiers_compareContent()
+	{
+		val diff = GenericDiffUtil<Tag>()
+
+		assertTrue(diff.areContentsTheSame(Tag(7, "a"), Tag(7, "a")))
+		assertFalse(diff.areContentsTheSame(Tag(7, "a"), Tag(7, "b")))
+	}
+
+	@Test
+	fun noIdentity_fallsBackToEquals()
+	{
+		val diff = GenericDiffUtil<Note>()
+
+		assertTrue(diff.areItemsTheSame(Note("a"), Note("a")))
+		assertFalse(diff.areItemsTheSame(Note("a"), Note("b")))
+		assertTrue(diff.areContentsTheSame(Note("a"), Note("a")))
+		assertFalse(diff.areContentsTheSame(Note("a"), Note("b")))
+	}
+
+	@Test
+	fun hashCollision_isNotSameContent()
+	{
+		val diff = GenericDiffUtil<Colliding>()
+
+		assertEquals(Colliding("a").contentHash, Colliding("b").contentHash)
+		assertFalse(diff.areContentsTheSame(Colliding("a"), Colliding("b")))
+		assertTrue(diff.areContentsTheSame(Colliding("a"), Colliding("a")))
+	}
+
+	@Test
+	fun contentHash_isCachedUntilInvalidated()
+	{
+		var hashes = 0
+		val item = object: GenericRecyclerItem()
+		{
+			override fun computeContentHash(): Int = ++hashes
+		}
+
+		assertEquals(item.contentHash, item.contentHash)
+		assertEquals(1, hashes)
+
+		item.invalidateContentHash()
+
+		assertEquals(2, item.contentHash)
+	}
+
+	@Test
+	fun changePayload_holdsChangedFields()
+	{
+		val diff = GenericDiffUtil<Titled>()
+		val payload = diff.getChangePayload(Titled(1L, "Tea", 3), Titled(1L, "Green tea", 3)) as ChangePayload
+
+		assertEquals(setOf(Titled.TITLE), payload.fields)
+		assertNull(diff.getChangePayload(Titled(1L, "Tea", 3), Titled(1L, "Tea", 3)))
+	}
+
+	@Test
+	fun diff_rebindsOnlyChangedRows()
+	{
+		val oldList = List(1_000) { Product(it.toLong(), "Product $it") }
+
+		// Every 100th row changed, every 250th removed and the last ten moved to the top
+		val newList = (oldList.takeLast(10) + oldList.dropLast(10))
+			.filterIndexed { index, _ -> index % 250 != 0 }
+			.map { if(it.id % 100 == 0L) it.copy(title = "Changed ${it.id}") else it.copy() }
+
+		val callback = GenericDiffUtil<Product>()
+		val changed = HashSet<Int>()
+
+		DiffUtil.calculateDiff(object: DiffUtil.Callback()
+		{
+			override fun getOldListSize(): Int = oldList.size
+			override fun getNewListSize(): Int = newList.size
+			override fun areItemsTheSame(oldPosition: Int, newPosition: Int): Boolean = callback.areItemsTheSame(oldList[oldPosition], newList[newPosition])
+			override fun areContentsTheSame(oldPosition: Int, newPosition: Int): Boolean = callback.areContentsTheSame(oldList[oldPosition], newList[newPosition])
+		}).dispatchUpdatesTo(object: ListUpdateCallback
+		{
+			override fun onInserted(position: Int, count: Int) = Unit
+			override fun onRemoved(position: Int, count: Int) = Unit
+			override fun onMoved(fromPosition: Int, toPosition: Int) = Unit
+			override fun onChanged(position: Int, count: Int, payload: Any?) { repeat(count) { changed.add(position + it) } }
+		})
+
+		assertEquals(newList.count { it.title.startsWith("Changed") }, changed.size)
+	}
+}
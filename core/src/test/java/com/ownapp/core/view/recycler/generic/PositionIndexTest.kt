@@ -0,0 +1,113 @@
+package com.ownapp.core.view.recycler.generic
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class PositionIndexTest
+{
+	// Equal by content like most items, so identity and equals lookups can be told apart
+	private data class Item(val name: String)
+
+	private val items = List(5) { Item("item $it") }
+
+	@Test
+	fun positionOf_findsEveryInstance()
+	{
+		val index = PositionIndex<Item>()
+
+		items.forEachIndexed { position, item -> assertEquals(position, index.positionOf(item, items)) }
+	}
+
+	@Test
+	fun positionOf_fallsBackToEqualItem()
+	{
+		val index = PositionIndex<Item>()
+
+		assertEquals(3, index.positionOf(Item("item 3"), items))
+		assertEquals(-1, index.positionOf(Item("missing"), items))
+	}
+
+	@Test
+	fun positionOf_prefersInstanceOverEarlierEqualItem()
+	{
+		val twin = Item("item 0")
+		val list = items + twin
+		val index = PositionIndex<Item>()
+
+		assertEquals(5, index.positionOf(twin, list))
+		assertEquals(0, index.positionOf(items[0], list))
+	}
+
+	@Test
+	fun positionOf_repeatedInstanceMapsToFirstPosition()
+	{
+		val list = items + items[1]
+
+		assertEquals(1, PositionIndex<Item>().positionOf(items[1], list))
+	}
+
+	@Test
+	fun positionOf_buildsIndexOnce()
+	{
+		var reads = 0
+		val list = object: AbstractList<Item>()
+		{
+			override val size: Int
+				get() = items.size
+
+			override fun get(index: Int): Item = items[index].also { reads++ }
+
+			override fun iterator(): Iterator<Item> = items.iterator().also { reads += items.size }
+		}
+		val index = PositionIndex<Item>()
+
+		index.positionOf(items[4], list)
+		val afterBuild = reads
+
+		repeat(10) { index.positionOf(items[it % items.size], list) }
+
+		assertEquals(afterBuild, reads)
+	}
+
+	@Test
+	fun onAppended_indexesNewItems()
+	{
+		val list = ChunkedList(items)
+		val index = PositionIndex<Item>()
+
+		index.positionOf(items[0], list)
+
+		val page = List(3) { Item("page $it") }
+		val start = list.appendChunk(page)
+		index.onAppended(start, page)
+
+		page.forEachIndexed { offset, item -> assertEquals(start + offset, index.positionOf(item, list)) }
+	}
+
+	@Test
+	fun onAppended_leavesUnbuiltIndexAlone()
+	{
+		val index = PositionIndex<Item>()
+
+		index.onAppended(0, items)
+
+		assertFalse(index.isBuilt)
+	}
+
+	@Test
+	fun invalidate_indexesReplacedList()
+	{
+		val index = PositionIndex<Item>()
+
+		index.positionOf(items[0], items)
+		assertTrue(index.isBuilt)
+
+		val reversed = items.reversed()
+		index.invalidate()
+
+		assertFalse(index.isBuilt)
+		assertEquals(4, index.positionOf(items[0], reversed))
+	}
+}
@@ -0,0 +1,174 @@
+package com.ownapp.core.view.recycler.generic
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class WindowedListTest
+{
+	// Blocks of 10 out of 100 items, item i being i
+	private val requests = ArrayList<Pair<Int, Int>>()
+	private val changes = ArrayList<Pair<Int, Int>>()
+
+	private fun list(totalCount: Int = 100, maxBlocks: Int = 4, prefetchBlocks: Int = 1) =
+		WindowedList<Int>(totalCount, blockSize = 10, maxBlocks = maxBlocks, prefetchBlocks = prefetchBlocks) { start, count ->
+			requests.add(start to count)
+		}.apply {
+			callback = object: WindowedList.Callback
+			{
+				override fun onRangeChanged(start: Int, count: Int)
+				{
+					changes.add(start to count)
+				}
+			}
+		}
+
+	// Answers every request made so far
+	private fun WindowedList<Int>.answer()
+	{
+		val pending = requests.toList()
+		requests.clear()
+		pending.forEach { (start, count) -> setItems(start, List(count) { start + it }) }
+	}
+
+	@Test
+	fun loadAround_requestsBlocksAroundPosition()
+	{
+		val list = list()
+
+		list.loadAround(25)
+
+		assertEquals(listOf(10 to 10, 20 to 10, 30 to 10), requests)
+	}
+
+	@Test
+	fun loadAround_requestsEachBlockOnce()
+	{
+		val list = list()
+
+		list.loadAround(25)
+		list.loadAround(29)
+		list.loadAround(35)
+
+		assertEquals(listOf(10 to 10, 20 to 10, 30 to 10, 40 to 10), requests)
+	}
+
+	@Test
+	fun loadAround_clipsToListBounds()
+	{
+		val list = list(totalCount = 95)
+
+		list.loadAround(0)
+		list.loadAround(94)
+
+		assertEquals(listOf(0 to 10, 10 to 10, 80 to 10, 90 to 5), requests)
+	}
+
+	@Test
+	fun setItems_fillsBlock()
+	{
+		val list = list()
+
+		list.loadAround(25)
+		list.answer()
+
+		assertEquals(25, list[25])
+		assertTrue(list.isLoaded(39))
+		assertFalse(list.isLoaded(40))
+		assertNull(list[40])
+		assertEquals(3, list.loadedBlockCount)
+		assertEquals(listOf(10 to 10, 20 to 10, 30 to 10), changes)
+	}
+
+	@Test
+	fun setItems_shortAnswerLeavesRestEmpty()
+	{
+		val list = list()
+
+		list.loadAround(5)
+		list.setItems(0, listOf(0, 1, 2))
+
+		assertEquals(2, list[2])
+		assertNull(list[3])
+		assertTrue(list.isLoaded(3))
+	}
+
+	@Test(expected = IllegalArgumentException::class)
+	fun setItems_rejectsStartInsideBlock()
+	{
+		list().setItems(5, listOf(5))
+	}
+
+	@Test
+	fun evict_dropsBlocksFurthestFromPosition()
+	{
+		val list = list(maxBlocks = 4)
+
+		list.loadAround(15)
+		list.answer()
+		list.loadAround(35)
+		list.answer()
+
+		// Blocks 0 to 4 were loaded, 0 is furthest from block 3
+		assertEquals(4, list.loadedBlockCount)
+		assertFalse(list.isLoaded(5))
+		assertNull(list[5])
+		assertEquals((1..4).map { it * 10 }, (0 until 100 step 10).filter { list.isLoaded(it) })
+		assertEquals(0 to 10, changes.last())
+	}
+
+	@Test
+	fun evict_keepsBlockCountBoundWhileScrolling()
+	{
+		val list = list(maxBlocks = 4)
+
+		for(position in 0 until 100 step 5)
+		{
+			list.loadAround(position)
+			list.answer()
+
+			assertTrue(list.loadedBlockCount <= 4)
+			assertEquals(position, list[position])
+		}
+	}
+
+	@Test
+	fun evict_requestsDroppedBlockAgainOnReturn()
+	{
+		val list = list(maxBlocks = 4)
+
+		list.loadAround(5)
+		list.answer()
+		list.loadAround(55)
+		list.answer()
+
+		// Five blocks loaded, only block 0 is dropped
+		assertFalse(list.isLoaded(0))
+		assertTrue(list.isLoaded(10))
+
+		list.loadAround(5)
+
+		assertEquals(listOf(0 to 10), requests)
+	}
+
+	@Test
+	fun onLoadFailed_requestsBlockAgain()
+	{
+		val list = list()
+
+		list.loadAround(25)
+		requests.clear()
+		list.onLoadFailed(20)
+		list.loadAround(25)
+
+		assertEquals(listOf(20 to 10), requests)
+	}
+
+	@Test(expected = IllegalArgumentException::class)
+	fun init_rejectsMaxBlocksBelowPrefetch()
+	{
+		list(maxBlocks = 2, prefetchBlocks = 1)
+	}
+}
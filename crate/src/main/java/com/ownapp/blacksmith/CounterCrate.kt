@@ -0,0 +1,210 @@
+package com.ownapp.blacksmith
+
+import android.content.ComponentCallbacks2
+import android.content.Context
+import android.content.res.Configuration
+import androidx.annotation.Keep
+import timber.log.Timber
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Counter for things that happen thousands of times a session, e.g. impressions or retries.
+ *
+ * [add] only touches an in-memory accumulator, the sum is written at most once per
+ * [flushIntervalMillis] and whenever the app goes to background. An increment is only taken off the
+ * accumulator together with the write that persists it, and put back if that write fails.
+ */
+@Keep
+class CounterCrate(
+	context: Context
+	, key: String
+	, default: Long = 0L
+	, val flushIntervalMillis: Long = DEFAULT_FLUSH_INTERVAL_MILLIS
+): Crate<Long>(context, key, default, Long::class.javaObjectType), SafeValue<Long>, Comparable<Long>
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Constant
+	//---------------------------------------------------------------------------------------------------*/
+	companion object
+	{
+		const val DEFAULT_FLUSH_INTERVAL_MILLIS = 5_000L
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	private val pending = AtomicLong()
+
+	// Shared by every counter of the key, so two of them can't both add to the same stored value
+	private val lock = CounterFlusher.lockOf(key)
+
+	/**
+	 * Stored value plus the increments not persisted yet.
+	 */
+	override var value: Long?
+		get() = synchronized(lock) { stored + pending.get() }
+		set(value)
+		{
+			synchronized(lock) {
+				pending.set(0L)
+				persist(value)
+			}
+		}
+
+	private val stored: Long
+		get() = context.load(key, default) ?: 0L
+
+	override val safeValue: Long
+		get() = value ?: 0L
+
+	init
+	{
+		CounterFlusher.register(context)
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Public
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * Lock free, safe to call from any thread at any rate.
+	 */
+	fun add(delta: Long)
+	{
+		// Only the first increment after a flush needs to schedule the next one
+		if(pending.getAndAdd(delta) == 0L && delta != 0L)
+			CounterFlusher.schedule(this)
+	}
+
+	fun increment() = add(1L)
+
+	fun decrement() = add(-1L)
+
+	operator fun inc(): CounterCrate = apply { increment() }
+
+	operator fun dec(): CounterCrate = apply { decrement() }
+
+	operator fun plusAssign(delta: Long) = add(delta)
+
+	operator fun minusAssign(delta: Long) = add(-delta)
+
+	override fun compareTo(other: Long): Int = safeValue.compareTo(other)
+
+	override fun clear()
+	{
+		value = default
+	}
+
+	/**
+	 * Persist the accumulated increments now.
+	 */
+	fun flush()
+	{
+		synchronized(lock) {
+			val delta = pending.getAndSet(0L)
+
+			if(delta == 0L)
+				return
+
+			try
+			{
+				context.save(key, stored + delta)
+			}
+			catch(e: RuntimeException)
+			{
+				// Keep them for the next flush rather than losing them
+				pending.addAndGet(delta)
+				Timber.e(e, "Counter $key flush failed")
+				CounterFlusher.schedule(this)
+			}
+		}
+	}
+}
+
+/**
+ * Flushes [CounterCrate]s on their interval, and all of them together with the pending write-behind
+ * values and storage writes once the UI is hidden since the process may be killed without further
+ * notice after that.
+ */
+internal object CounterFlusher: ComponentCallbacks2
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	// Needs no Looper, so counters also flush on a plain JVM
+	private val executor by lazy {
+		Executors.newSingleThreadScheduledExecutor { Thread(it, "CounterFlusher").apply { isDaemon = true } }
+	}
+
+	// Counters with increments waiting for their scheduled flush
+	private val dirty: MutableSet<CounterCrate> = Collections.newSetFromMap(ConcurrentHashMap())
+
+	private val keyLocks = ConcurrentHashMap<String, Any>()
+
+	@Volatile
+	private var isRegistered = false
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Public
+	//---------------------------------------------------------------------------------------------------*/
+	fun register(context: Context)
+	{
+		if(isRegistered)
+			return
+
+		synchronized(this) {
+			if(!isRegistered)
+			{
+				context.applicationContext.registerComponentCallbacks(this)
+				isRegistered = true
+			}
+		}
+	}
+
+	/**
+	 * Lock of [key] for every counter of it, held while reading the stored value and writing it back.
+	 */
+	fun lockOf(key: String): Any = keyLocks.getOrPut(key) { Any() }
+
+	fun schedule(counter: CounterCrate)
+	{
+		if(dirty.add(counter))
+			executor.schedule({ flush(counter) }, counter.flushIntervalMillis, TimeUnit.MILLISECONDS)
+	}
+
+	fun flushAll()
+	{
+		dirty.toList().forEach { flush(it) }
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Implement
+	//---------------------------------------------------------------------------------------------------*/
+	override fun onTrimMemory(level: Int)
+	{
+		if(level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN)
+			executor.execute { Crates.flush() }
+	}
+
+	override fun onConfigurationChanged(newConfig: Configuration) = Unit
+
+	override fun onLowMemory() = Unit
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Private
+	//---------------------------------------------------------------------------------------------------*/
+	private fun flush(counter: CounterCrate)
+	{
+		// Removed first, an increment racing with the flush schedules the next one
+		dirty.remove(counter)
+		counter.flush()
+	}
+}
@@ -0,0 +1,205 @@
+package com.ownapp.blacksmith
+
+import android.content.SharedPreferences
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Process-wide, already decrypted view of the crate preferences.
+ *
+ * [load] and [save] go through here so that a hot [Crate.value] read costs a map lookup instead of
+ * an AES-SIV key encryption plus an AES-GCM value decryption. Changes that did not come from [save]
+ * are picked up through the registered [SharedPreferences.OnSharedPreferenceChangeListener], the only
+ * one the crates register, and passed on to [CrateChanges].
+ */
+internal object CrateCache: SharedPreferences.OnSharedPreferenceChangeListener
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	// Marks a key known to be absent from the preferences
+	private val absent = Any()
+
+	// Marks a key changed by someone else, it must be read through again. A new one per change, so a
+	// read started before the change can't publish its older value over it
+	private class Stale
+
+	private val values = ConcurrentHashMap<String, Any>()
+
+	// Values written by [write] whose change callback hasn't arrived yet. A write that changed nothing
+	// gets no callback, so the next callback of the key is only ours if the stored value still matches
+	private val pendingWrites = ConcurrentHashMap<String, Any>()
+
+	/**
+	 * True once every key of the preferences has been decrypted into the cache, so a miss means the
+	 * key doesn't exist and there is no need to ask the preferences again.
+	 */
+	@Volatile
+	var isWarm: Boolean = false
+		private set
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Public
+	//---------------------------------------------------------------------------------------------------*/
+	fun attach(preferences: SharedPreferences)
+	{
+		// The preferences only keep a weak reference to the listener, this object keeps it alive
+		preferences.registerOnSharedPreferenceChangeListener(this)
+	}
+
+	/**
+	 * Decrypt all entries of [preferences] in a single [SharedPreferences.getAll] pass.
+	 */
+	fun warm(preferences: SharedPreferences)
+	{
+		if(isWarm)
+			return
+
+		preferences.all.forEach { (key, value) ->
+			// A value written meanwhile is newer than this pass, a stale one is older
+			val seen = values.putIfAbsent(key, value ?: absent)
+
+			if(seen is Stale)
+				values.replace(key, seen, value ?: absent)
+		}
+
+		isWarm = true
+	}
+
+	/**
+	 * @return The cached value of [key], or [reader]'s result which is then cached.
+	 * `null` when the key doesn't exist.
+	 */
+	fun read(key: String, reader: () -> Any?): Any?
+	{
+		val cached = values[key]
+
+		return when
+		{
+			cached === absent -> null
+			cached is Stale -> publish(key, cached, reader())
+			cached != null -> cached
+			isWarm -> null
+			else -> publish(key, null, reader())
+		}
+	}
+
+	fun write(key: String, value: Any)
+	{
+		pendingWrites[key] = value
+		values[key] = value
+		CrateChanges.dispatch(key)
+	}
+
+	/**
+	 * Read [key] through again, for writes that bypassed [write] or never reached the store.
+	 */
+	fun invalidate(key: String)
+	{
+		pendingWrites.remove(key)
+		values[key] = Stale()
+		CrateChanges.dispatch(key)
+	}
+
+	fun clear()
+	{
+		pendingWrites.clear()
+		values.clear()
+		isWarm = false
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Implement
+	//---------------------------------------------------------------------------------------------------*/
+	override fun onSharedPreferenceChanged(preferences: SharedPreferences?, key: String?)
+	{
+		when
+		{
+			// Preferences were cleared
+			key == null ->
+			{
+				clear()
+				CrateChanges.dispatchAll()
+			}
+
+			// Our own write, the cache already holds the new value and observers were told in [write]
+			isOwnWrite(preferences, key) -> Unit
+
+			else ->
+			{
+				values[key] = Stale()
+				CrateChanges.dispatch(key)
+			}
+		}
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Private
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * Cache [read] in place of [seen], the entry [read] started from, unless a write or a change
+	 * replaced that entry while reading. The replacing one is newer, so it's kept and returned.
+	 */
+	private fun publish(key: String, seen: Any?, read: Any?): Any?
+	{
+		val value = read ?: absent
+		val isPublished = if(seen == null) values.putIfAbsent(key, value) == null else values.replace(key, seen, value)
+
+		if(isPublished)
+			return read
+
+		return when(val current = values[key])
+		{
+			absent -> null
+			null, is Stale -> read
+			else -> current
+		}
+	}
+
+	private fun isOwnWrite(preferences: SharedPreferences?, key: String): Boolean
+	{
+		val pending = pendingWrites.remove(key) ?: return false
+
+		return preferences != null && preferences.readStored(key, pending.javaClass) == pending
+	}
+}
+
+/**
+ * The value stored for [key], read as [type] but never a default, since the result goes into the
+ * shared [CrateCache]. Only [key] is decrypted, except for a value of unknown type that isn't text.
+ */
+internal fun SharedPreferences.readStored(key: String, type: Class<*>?): Any?
+{
+	if(!contains(key))
+		return null
+
+	return try
+	{
+		when(type)
+		{
+			Long::class.javaObjectType -> getLong(key, 0L)
+			Int::class.javaObjectType -> getInt(key, 0)
+			Float::class.javaObjectType -> getFloat(key, 0f)
+			Boolean::class.javaObjectType -> getBoolean(key, false)
+			null -> readUntyped(key)
+			else -> getString(key, null)
+		}
+	}
+	catch(e: ClassCastException)
+	{
+		// Stored with another type, which [load] then answers with its default
+		readUntyped(key)
+	}
+}
+
+// Nothing to tell the type by, most values are text and anything else is taken from the full listing
+private fun SharedPreferences.readUntyped(key: String): Any? = try
+{
+	getString(key, null)
+}
+catch(e: ClassCastException)
+{
+	null
+} ?: all[key]
@@ -0,0 +1,47 @@
+package com.ownapp.blacksmith
+
+import kotlinx.coroutines.channels.awaitClose
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.callbackFlow
+import kotlinx.coroutines.flow.conflate
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArraySet
+
+/**
+ * Fans the single [CrateCache] preference listener out to whoever observes a crate key, so observing
+ * a crate doesn't register yet another listener on the encrypted preferences.
+ */
+internal object CrateChanges
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	private val observers = ConcurrentHashMap<String, CopyOnWriteArraySet<() -> Unit>>()
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Public
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * Emits once on collection and again every time [key] may have changed, signals that arrive while
+	 * the collector is busy are merged into one.
+	 */
+	fun of(key: String): Flow<Unit> = callbackFlow {
+		val observer = { trySend(Unit); Unit }
+
+		observers.getOrPut(key) { CopyOnWriteArraySet() }.add(observer)
+		send(Unit)
+
+		awaitClose { observers[key]?.remove(observer) }
+	}.conflate()
+
+	fun dispatch(key: String)
+	{
+		observers[key]?.forEach { it() }
+	}
+
+	fun dispatchAll()
+	{
+		observers.values.forEach { keyObservers -> keyObservers.forEach { it() } }
+	}
+}
@@ -0,0 +1,113 @@
+package com.ownapp.blacksmith
+
+import androidx.annotation.Keep
+import java.io.DataInput
+import java.io.DataOutput
+import java.io.IOException
+
+/**
+ * Binary form of an [ObjectCrate] value.
+ *
+ * ```
+ * object ProfileCodec: CrateCodec<Profile>
+ * {
+ *     override fun encode(value: Profile, output: DataOutput) = with(output) {
+ *         writeLong(value.id)
+ *         writeUTF(value.name)
+ *     }
+ *
+ *     override fun decode(input: DataInput) = Profile(input.readLong(), input.readUTF())
+ * }
+ * ```
+ */
+@Keep
+interface CrateCodec<T: Any>
+{
+	@Throws(IOException::class)
+	fun encode(value: T, output: DataOutput)
+
+	@Throws(IOException::class)
+	fun decode(input: DataInput): T
+}
+
+/**
+ * Codecs for primitives and collections of them, elements are written in binary and never go
+ * through a String.
+ */
+@Keep
+object CrateCodecs
+{
+	val INT: CrateCodec<Int> = codec({ writeInt(it) }, { readInt() })
+	val LONG: CrateCodec<Long> = codec({ writeLong(it) }, { readLong() })
+	val FLOAT: CrateCodec<Float> = codec({ writeFloat(it) }, { readFloat() })
+	val DOUBLE: CrateCodec<Double> = codec({ writeDouble(it) }, { readDouble() })
+	val BOOLEAN: CrateCodec<Boolean> = codec({ writeBoolean(it) }, { readBoolean() })
+
+	// Length prefixed UTF-8, not limited to 64KB like writeUTF
+	val STRING: CrateCodec<String> = codec(
+		{
+			val bytes = it.toByteArray()
+			writeInt(bytes.size)
+			write(bytes)
+		}
+		, { String(ByteArray(readInt()).also { bytes -> readFully(bytes) }) }
+	)
+
+	val INT_ARRAY: CrateCodec<IntArray> = codec(
+		{ array ->
+			writeInt(array.size)
+			array.forEach { writeInt(it) }
+		}
+		, { IntArray(readInt()) { readInt() } }
+	)
+
+	val LONG_ARRAY: CrateCodec<LongArray> = codec(
+		{ array ->
+			writeInt(array.size)
+			array.forEach { writeLong(it) }
+		}
+		, { LongArray(readInt()) { readLong() } }
+	)
+
+	fun <T: Any> list(element: CrateCodec<T>): CrateCodec<List<T>> = codec(
+		{ list ->
+			writeInt(list.size)
+			list.forEach { element.encode(it, this) }
+		}
+		, { List(readInt()) { element.decode(this) } }
+	)
+
+	fun <T: Any> set(element: CrateCodec<T>): CrateCodec<Set<T>> = codec(
+		{ set ->
+			writeInt(set.size)
+			set.forEach { element.encode(it, this) }
+		}
+		, { (0 until readInt()).mapTo(LinkedHashSet()) { element.decode(this) } }
+	)
+
+	fun <K: Any, V: Any> map(key: CrateCodec<K>, value: CrateCodec<V>): CrateCodec<Map<K, V>> = codec(
+		{ map ->
+			writeInt(map.size)
+			map.forEach { (k, v) ->
+				key.encode(k, this)
+				value.encode(v, this)
+			}
+		}
+		, {
+			val size = readInt()
+			val map = LinkedHashMap<K, V>(size)
+
+			repeat(size) { map[key.decode(this)] = value.decode(this) }
+			map
+		}
+	)
+
+	private inline fun <T: Any> codec(
+		crossinline encoder: DataOutput.(T) -> Unit
+		, crossinline decoder: DataInput.() -> T
+	): CrateCodec<T> = object: CrateCodec<T>
+	{
+		override fun encode(value: T, output: DataOutput) = output.encoder(value)
+		override fun decode(input: DataInput): T = input.decoder()
+	}
+}
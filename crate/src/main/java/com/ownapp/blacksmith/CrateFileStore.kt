@@ -0,0 +1,478 @@
+package com.ownapp.blacksmith
+
+import android.content.Context
+import android.security.keystore.KeyGenParameterSpec
+import android.security.keystore.KeyProperties
+import androidx.core.util.AtomicFile
+import timber.log.Timber
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.security.GeneralSecurityException
+import java.security.KeyStore
+import java.security.SecureRandom
+import javax.crypto.Cipher
+import javax.crypto.KeyGenerator
+import javax.crypto.SecretKey
+import javax.crypto.spec.GCMParameterSpec
+import javax.crypto.spec.SecretKeySpec
+
+/**
+ * One crate namespace kept as an AES-GCM sealed snapshot plus an append-only log of sealed records.
+ *
+ * Loading costs a single Android Keystore operation to unwrap the data key, one decrypt of the
+ * snapshot and one per log record since the last compaction. Every commit appends one record, a torn
+ * record at the end of the log, e.g. after a crash mid write, is dropped and truncated away.
+ *
+ * A record that decrypts but can't be read, e.g. one written by a newer version, ends the replay as
+ * well. It and everything after it is moved to a `.corrupt` file next to the log, so the snapshot and
+ * the records before it still load.
+ *
+ * Not thread safe, [SealedFilePreferences] calls [append] and [compact] from its single writer thread.
+ */
+internal open class CrateFileStore(private val directory: File, private val name: String)
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Constant
+	//---------------------------------------------------------------------------------------------------*/
+	companion object
+	{
+		private const val DIRECTORY = "crates"
+		private const val KEYSTORE = "AndroidKeyStore"
+		private const val KEYSTORE_ALIAS = "crate_store_key"
+		private const val TRANSFORMATION = "AES/GCM/NoPadding"
+		private const val IV_LENGTH = 12
+		private const val TAG_BITS = 128
+		private const val VERSION = 1
+
+		// The log is folded into a new snapshot once it grows past this
+		private const val COMPACT_THRESHOLD_BYTES = 64 * 1024L
+
+		private const val TYPE_REMOVE: Byte = 0
+		private const val TYPE_INT: Byte = 1
+		private const val TYPE_LONG: Byte = 2
+		private const val TYPE_FLOAT: Byte = 3
+		private const val TYPE_BOOLEAN: Byte = 4
+		private const val TYPE_STRING: Byte = 5
+		private const val TYPE_STRING_SET: Byte = 6
+
+		private val keystoreSpec by lazy {
+			KeyGenParameterSpec.Builder(
+					KEYSTORE_ALIAS
+					, KeyProperties.PURPOSE_ENCRYPT or KeyProperties.PURPOSE_DECRYPT
+				)
+				.setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+				.setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+				.setKeySize(256)
+				.build()
+		}
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	// Forged names are Base64 and may contain '/'
+	private val fileName = name.replace('/', '_')
+	private val keyFile = AtomicFile(File(directory, "$fileName.key"))
+	private val snapshotFile = AtomicFile(File(directory, "$fileName.snapshot"))
+	private val logFile = File(directory, "$fileName.log")
+
+	// Unreadable data is moved here instead of being deleted
+	private val corruptSnapshotFile = File(directory, "$fileName.snapshot.corrupt")
+	private val corruptLogFile = File(directory, "$fileName.log.corrupt")
+
+	// Binds every sealed blob to its namespace
+	private val associatedData = name.toByteArray()
+	private val random = SecureRandom()
+
+	private var dataKey: SecretKey? = null
+	private var logStream: FileOutputStream? = null
+
+	val shouldCompact: Boolean
+		get() = logFile.length() > COMPACT_THRESHOLD_BYTES
+
+	// No backup, the Keystore key wrapping the data key never leaves the device
+	constructor(context: Context, name: String): this(File(context.noBackupFilesDir, DIRECTORY), name)
+
+	init
+	{
+		directory.mkdirs()
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Public
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * @return Every value of the namespace, the snapshot with the log replayed on top of it
+	 */
+	fun load(): MutableMap<String, Any>
+	{
+		val values = HashMap<String, Any>()
+
+		try
+		{
+			// Unwrap first, so a lost Keystore key isn't mistaken for a torn log record
+			if(snapshotFile.baseFile.exists() || logFile.exists())
+				dataKey()
+
+			if(snapshotFile.baseFile.exists() && !readSnapshot(values))
+				return values
+
+			replayLog(values)
+		}
+		catch(e: GeneralSecurityException)
+		{
+			// Keystore key is gone (e.g. lock screen reset) or the files were tampered with, nothing is readable
+			Timber.w(e, "Crate store $name cannot be decrypted, starting empty")
+			reset()
+			values.clear()
+		}
+		catch(e: IOException)
+		{
+			// Every record replayed so far was applied whole, the rest is read again next time
+			Timber.w(e, "Crate store $name log could not be read to the end")
+		}
+
+		return values
+	}
+
+	/**
+	 * Append one commit to the log, a `null` value removes its key.
+	 */
+	@Throws(IOException::class)
+	fun append(isClear: Boolean, changes: Map<String, Any?>)
+	{
+		val plain = ByteArrayOutputStream().also { bytes ->
+			DataOutputStream(bytes).use { output ->
+				output.writeBoolean(isClear)
+				writeChanges(output, changes)
+			}
+		}.toByteArray()
+
+		val sealed = seal(plain)
+		val record = ByteArray(4 + sealed.size).also {
+			it[0] = (sealed.size ushr 24).toByte()
+			it[1] = (sealed.size ushr 16).toByte()
+			it[2] = (sealed.size ushr 8).toByte()
+			it[3] = sealed.size.toByte()
+			sealed.copyInto(it, 4)
+		}
+
+		val stream = logStream ?: FileOutputStream(logFile, true).also { logStream = it }
+
+		// A single write per record, so a crash leaves at most one torn record at the end
+		stream.write(record)
+		stream.fd.sync()
+	}
+
+	/**
+	 * Replace the snapshot with [values] and start a new log.
+	 */
+	@Throws(IOException::class)
+	fun compact(values: Map<String, Any>)
+	{
+		val plain = ByteArrayOutputStream().also { bytes ->
+			DataOutputStream(bytes).use { output -> writeChanges(output, values) }
+		}.toByteArray()
+
+		writeAtomically(snapshotFile, seal(plain))
+
+		// Replaying an old log over the new snapshot gives the same values, so a crash before this is harmless
+		logStream?.close()
+		logStream = null
+		logFile.delete()
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Private
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * @return False when the snapshot can't be read, it is moved aside and the log dropped then,
+	 * since the log alone doesn't make up the namespace
+	 */
+	private fun readSnapshot(values: MutableMap<String, Any>): Boolean
+	{
+		val changes = LinkedHashMap<String, Any?>()
+
+		try
+		{
+			readChanges(DataInputStream(open(snapshotFile.readFully()).inputStream()), changes)
+		}
+		catch(e: IOException)
+		{
+			Timber.w(e, "Crate store $name snapshot is unreadable, moving it to ${corruptSnapshotFile.name}")
+
+			corruptSnapshotFile.delete()
+			snapshotFile.baseFile.renameTo(corruptSnapshotFile)
+			snapshotFile.delete()
+			logFile.delete()
+			return false
+		}
+
+		values.applyChanges(false, changes)
+		return true
+	}
+
+	private fun replayLog(values: MutableMap<String, Any>)
+	{
+		if(!logFile.exists())
+			return
+
+		var validLength = 0L
+		var isCorrupt = false
+
+		DataInputStream(FileInputStream(logFile).buffered()).use { input ->
+			while(true)
+			{
+				var length = 0
+				val plain = try
+				{
+					length = input.readInt()
+
+					if(length <= IV_LENGTH || length > logFile.length() - validLength - 4)
+						break
+
+					open(ByteArray(length).also { input.readFully(it) })
+				}
+				catch(e: EOFException)
+				{
+					break
+				}
+				catch(e: GeneralSecurityException)
+				{
+					break
+				}
+
+				// Read whole before applying, a record failing halfway mustn't leave half its changes
+				val changes = LinkedHashMap<String, Any?>()
+				val isClear = try
+				{
+					DataInputStream(plain.inputStream()).use { record ->
+						val isClear = record.readBoolean()
+						readChanges(record, changes)
+						isClear
+					}
+				}
+				catch(e: IOException)
+				{
+					Timber.w(e, "Crate store $name log record at $validLength is unreadable")
+					isCorrupt = true
+					break
+				}
+
+				values.applyChanges(isClear, changes)
+				validLength += 4 + length
+			}
+		}
+
+		if(validLength < logFile.length())
+		{
+			if(isCorrupt)
+				quarantineLog(validLength)
+			else
+				Timber.w("Crate store $name dropping torn log tail at $validLength of ${logFile.length()}")
+
+			RandomAccessFile(logFile, "rw").use { it.setLength(validLength) }
+		}
+	}
+
+	/**
+	 * Keep the log from [offset] on in [corruptLogFile], the records are still sealed with the data key.
+	 */
+	private fun quarantineLog(offset: Long)
+	{
+		Timber.w("Crate store $name moving log from $offset to ${corruptLogFile.name}")
+
+		RandomAccessFile(logFile, "r").use { input ->
+			input.seek(offset)
+
+			FileOutputStream(corruptLogFile).use { output ->
+				val buffer = ByteArray(8 * 1024)
+
+				while(true)
+				{
+					val read = input.read(buffer)
+
+					if(read < 0)
+						break
+
+					output.write(buffer, 0, read)
+				}
+			}
+		}
+	}
+
+	private fun MutableMap<String, Any>.applyChanges(isClear: Boolean, changes: Map<String, Any?>)
+	{
+		if(isClear)
+			clear()
+
+		changes.forEach { (key, value) -> if(value == null) remove(key) else put(key, value) }
+	}
+
+	private fun writeChanges(output: DataOutputStream, changes: Map<String, Any?>)
+	{
+		output.writeInt(VERSION)
+		output.writeInt(changes.size)
+
+		changes.forEach { (key, value) ->
+			output.writeText(key)
+
+			when(value)
+			{
+				null -> output.writeByte(TYPE_REMOVE.toInt())
+				is Int -> output.run { writeByte(TYPE_INT.toInt()); writeInt(value) }
+				is Long -> output.run { writeByte(TYPE_LONG.toInt()); writeLong(value) }
+				is Float -> output.run { writeByte(TYPE_FLOAT.toInt()); writeFloat(value) }
+				is Boolean -> output.run { writeByte(TYPE_BOOLEAN.toInt()); writeBoolean(value) }
+				is String -> output.run { writeByte(TYPE_STRING.toInt()); writeText(value) }
+				is Set<*> -> output.run {
+					writeByte(TYPE_STRING_SET.toInt())
+					writeInt(value.size)
+					value.forEach { writeText(it as String) }
+				}
+				else -> throw IllegalArgumentException("Unsupported crate value ${value.javaClass.name}")
+			}
+		}
+	}
+
+	/**
+	 * Read one record into [changes], a removed key is read as `null`.
+	 */
+	private fun readChanges(input: DataInputStream, changes: MutableMap<String, Any?>)
+	{
+		val version = input.readInt()
+
+		if(version != VERSION)
+			throw IOException("Unknown crate store version $version")
+
+		repeat(input.readInt()) {
+			val key = input.readText()
+
+			when(val type = input.readByte())
+			{
+				TYPE_REMOVE -> changes[key] = null
+				TYPE_INT -> changes[key] = input.readInt()
+				TYPE_LONG -> changes[key] = input.readLong()
+				TYPE_FLOAT -> changes[key] = input.readFloat()
+				TYPE_BOOLEAN -> changes[key] = input.readBoolean()
+				TYPE_STRING -> changes[key] = input.readText()
+				TYPE_STRING_SET -> changes[key] = HashSet<String>().apply {
+					repeat(input.readInt()) { add(input.readText()) }
+				}
+				else -> throw IOException("Unknown crate value type $type")
+			}
+		}
+	}
+
+	// Unlike writeUTF, not limited to 64KB, forged payloads can be larger
+	private fun DataOutputStream.writeText(text: String)
+	{
+		val bytes = text.toByteArray()
+		writeInt(bytes.size)
+		write(bytes)
+	}
+
+	private fun DataInputStream.readText(): String = String(ByteArray(readInt()).also { readFully(it) })
+
+	/**
+	 * @return IV followed by the ciphertext and its tag
+	 */
+	private fun seal(plain: ByteArray): ByteArray
+	{
+		val iv = ByteArray(IV_LENGTH).also { random.nextBytes(it) }
+		val cipher = Cipher.getInstance(TRANSFORMATION).apply {
+			init(Cipher.ENCRYPT_MODE, dataKey(), GCMParameterSpec(TAG_BITS, iv))
+			updateAAD(associatedData)
+		}
+
+		return iv + cipher.doFinal(plain)
+	}
+
+	private fun open(sealed: ByteArray): ByteArray
+	{
+		val cipher = Cipher.getInstance(TRANSFORMATION).apply {
+			init(Cipher.DECRYPT_MODE, dataKey(), GCMParameterSpec(TAG_BITS, sealed, 0, IV_LENGTH))
+			updateAAD(associatedData)
+		}
+
+		return cipher.doFinal(sealed, IV_LENGTH, sealed.size - IV_LENGTH)
+	}
+
+	private fun dataKey(): SecretKey = dataKey ?: loadDataKey().also { dataKey = it }
+
+	/**
+	 * Software AES key for the namespace, stored wrapped by a Keystore key so a load needs only one
+	 * Keystore operation instead of one per value.
+	 */
+	protected open fun loadDataKey(): SecretKey
+	{
+		val keystoreKey = with(KeyStore.getInstance(KEYSTORE).apply { load(null) }) {
+			getKey(KEYSTORE_ALIAS, null) as? SecretKey
+				?: KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE).run {
+					init(keystoreSpec)
+					generateKey()
+				}
+		}
+
+		if(keyFile.baseFile.exists())
+		{
+			val wrapped = keyFile.readFully()
+			val cipher = Cipher.getInstance(TRANSFORMATION).apply {
+				init(Cipher.DECRYPT_MODE, keystoreKey, GCMParameterSpec(TAG_BITS, wrapped, 0, IV_LENGTH))
+			}
+
+			return SecretKeySpec(cipher.doFinal(wrapped, IV_LENGTH, wrapped.size - IV_LENGTH), KeyProperties.KEY_ALGORITHM_AES)
+		}
+
+		// New namespace, whatever data is left has no key to open it
+		snapshotFile.delete()
+		logFile.delete()
+
+		val dataKey = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES).run {
+			init(256)
+			generateKey()
+		}
+
+		// The Keystore picks the IV itself
+		val cipher = Cipher.getInstance(TRANSFORMATION).apply { init(Cipher.ENCRYPT_MODE, keystoreKey) }
+		writeAtomically(keyFile, cipher.iv + cipher.doFinal(dataKey.encoded))
+
+		return dataKey
+	}
+
+	private fun writeAtomically(file: AtomicFile, bytes: ByteArray)
+	{
+		val stream = file.startWrite()
+
+		try
+		{
+			stream.write(bytes)
+			file.finishWrite(stream)
+		}
+		catch(e: IOException)
+		{
+			file.failWrite(stream)
+			throw e
+		}
+	}
+
+	private fun reset()
+	{
+		dataKey = null
+		logStream?.close()
+		logStream = null
+		keyFile.delete()
+		snapshotFile.delete()
+		logFile.delete()
+	}
+}
@@ -0,0 +1,160 @@
+package com.ownapp.blacksmith
+
+import android.content.Context
+import android.content.SharedPreferences
+import androidx.annotation.Keep
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.collect
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+import timber.log.Timber
+import java.io.IOException
+
+/**
+ * Moves plain [SharedPreferences] entries into the crates in one background pass.
+ *
+ * Every entry is encrypted into a single editor and written with one commit, then the plain entries
+ * are removed with one commit on [source]. The migrated keys are committed together with the values
+ * under a marker, so a run interrupted between the two commits only finishes the removal next time
+ * instead of copying again over values the app may have changed since.
+ *
+ * ```
+ * lifecycleScope.launch {
+ *     CrateMigration(context).migrate().collect { progressBar.progress = it.percent }
+ * }
+ * ```
+ *
+ * @param source Plain preferences, by default the ones of `PreferenceManager.getDefaultSharedPreferences`
+ * @param keys Keys to move, `null` moves everything
+ */
+@Keep
+class CrateMigration(
+	private val context: Context
+	, private val source: SharedPreferences = context.getSharedPreferences(
+		"${context.packageName}_preferences"
+		, Context.MODE_PRIVATE
+	)
+	, private val keys: Set<String>? = null
+)
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Constant
+	//---------------------------------------------------------------------------------------------------*/
+	companion object
+	{
+		private const val MARKER = "__crate_migration"
+
+		// How many entries are encrypted between two progress updates
+		private const val PROGRESS_STEP = 50
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Class
+	//---------------------------------------------------------------------------------------------------*/
+	@Keep
+	data class Progress(val migrated: Int, val total: Int, val isDone: Boolean = false)
+	{
+		val percent: Int
+			get() = if(total == 0) 100 else migrated * 100 / total
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Public
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * Runs on [Dispatchers.IO] when collected. Fails with an [IOException] when a commit fails, the
+	 * source is left untouched then and collecting again resumes.
+	 */
+	fun migrate(): Flow<Progress> = flow {
+		val target = context.applicationContext.crateStorage
+
+		finishInterrupted(target)
+
+		val entries = source.all.filterKeys { it != MARKER && (keys == null || it in keys) }
+		val total = entries.size
+
+		if(total == 0)
+		{
+			emit(Progress(0, 0, true))
+			return@flow
+		}
+
+		emit(Progress(0, total))
+
+		val editor = target.edit()
+		var encrypted = 0
+
+		entries.forEach { (key, value) ->
+			editor.put(key, value)
+
+			if(++encrypted % PROGRESS_STEP == 0)
+				emit(Progress(encrypted, total))
+		}
+
+		editor.putStringSet(MARKER, entries.keys)
+
+		if(!editor.commit())
+			throw IOException("Crate migration commit failed")
+
+		// Don't wait for the change callbacks, a warm cache would report these keys missing until then
+		entries.keys.forEach { CrateCache.invalidate(it) }
+
+		finishInterrupted(target)
+		Timber.d("Migrated $total plain preferences into crates")
+
+		emit(Progress(total, total, true))
+	}.flowOn(Dispatchers.IO)
+
+	/**
+	 * [migrate] with a callback instead of a flow.
+	 */
+	suspend fun migrate(onProgress: (Progress) -> Unit): Progress
+	{
+		var progress = Progress(0, 0)
+
+		migrate().collect {
+			progress = it
+			onProgress(it)
+		}
+
+		return progress
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Private
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * Removes the plain entries a committed migration left behind, then its marker.
+	 */
+	private fun finishInterrupted(target: SharedPreferences)
+	{
+		val migrated = target.getStringSet(MARKER, null) ?: return
+
+		val removal = source.edit()
+		migrated.forEach { removal.remove(it) }
+
+		if(!removal.commit())
+			throw IOException("Plain preferences removal failed")
+
+		if(!target.edit().remove(MARKER).commit())
+			throw IOException("Crate migration marker removal failed")
+	}
+
+	@Suppress("UNCHECKED_CAST")
+	private fun SharedPreferences.Editor.put(key: String, value: Any?)
+	{
+		when(value)
+		{
+			is Long -> putLong(key, value)
+			is Int -> putInt(key, value)
+			is Float -> putFloat(key, value)
+			is Boolean -> putBoolean(key, value)
+			is String -> putString(key, value)
+			is Set<*> -> putStringSet(key, value as Set<String>)
+		}
+	}
+}
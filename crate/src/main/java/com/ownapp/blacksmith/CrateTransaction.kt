@@ -0,0 +1,202 @@
+package com.ownapp.blacksmith
+
+import android.os.Handler
+import android.os.HandlerThread
+import android.os.SystemClock
+import androidx.annotation.Keep
+
+/**
+ * Collects every crate written by [block], from any number of [Crate] instances, and persists them
+ * with a single editor apply once the outermost block returns.
+ *
+ * Reads inside the block already see the new values. If any block of the batch throws, nothing is
+ * persisted and the crates read their stored values again.
+ *
+ * ```
+ * crates {
+ *     token.value = response.token
+ *     userId.value = response.userId
+ *     loginTime.value = System.currentTimeMillis()
+ * }
+ * ```
+ */
+@Keep
+fun <R> crates(block: () -> R): R
+{
+	CrateBatch.begin()
+
+	var isSuccessful = false
+
+	try
+	{
+		return block().also { isSuccessful = true }
+	}
+	finally
+	{
+		CrateBatch.end(isSuccessful)
+	}
+}
+
+/**
+ * Same as [crates], scoped to this crate for convenience.
+ */
+@Keep
+fun <C: Crate<*>, R> C.transaction(block: C.() -> R): R = crates { block() }
+
+/**
+ * Per-thread batch of pending writes opened by [crates].
+ */
+internal object CrateBatch
+{
+	private class Batch
+	{
+		var depth = 0
+		val values = LinkedHashMap<String, Any>()
+
+		// A nested block threw, the whole batch is dropped like a nested database transaction
+		var isRolledBack = false
+	}
+
+	private val batch = object: ThreadLocal<Batch>()
+	{
+		override fun initialValue() = Batch()
+	}
+
+	fun begin()
+	{
+		batch.get()!!.depth++
+	}
+
+	fun end(isSuccessful: Boolean)
+	{
+		with(batch.get()!!) {
+			if(!isSuccessful)
+				isRolledBack = true
+
+			if(--depth > 0)
+				return
+
+			val staged = LinkedHashMap(values)
+			val isCommitted = !isRolledBack
+
+			values.clear()
+			isRolledBack = false
+
+			when
+			{
+				staged.isEmpty() -> Unit
+				isCommitted -> commitCrates(staged)
+
+				// The cache took the values already, make it read the stored ones again
+				else -> staged.keys.forEach { CrateCache.invalidate(it) }
+			}
+		}
+	}
+
+	/**
+	 * @return True when a batch is open on this thread and has taken the write over.
+	 */
+	fun offer(key: String, value: Any): Boolean = with(batch.get()!!) {
+		if(depth > 0)
+		{
+			values[key] = value
+			true
+		}
+		else false
+	}
+}
+
+/**
+ * Debounced write-behind for crates that change at high frequency.
+ *
+ * Values are cached straight away, the encrypted write happens once no new value arrived for the
+ * crate's [Crate.writeBehindMillis], or at the latest [MAX_WAIT_FACTOR] times that long after the
+ * first value not persisted yet. All values due at the same time are persisted in one apply.
+ */
+internal object CrateWriteBehind
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Constant
+	//---------------------------------------------------------------------------------------------------*/
+	private const val MAX_WAIT_FACTOR = 4
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Class
+	//---------------------------------------------------------------------------------------------------*/
+	private class Pending(val value: Any, val firstMillis: Long, val dueMillis: Long)
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	private val handler by lazy {
+		Handler(HandlerThread("CrateWriteBehind").apply { start() }.looper)
+	}
+
+	// Also guards the commit of the values taken out, so a save() cancelling one of them waits for
+	// that commit and its own write lands after it
+	private val pending = LinkedHashMap<String, Pending>()
+	private val flushRunnable = Runnable { commit { it.dueMillis <= SystemClock.uptimeMillis() } }
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Public
+	//---------------------------------------------------------------------------------------------------*/
+	fun schedule(key: String, value: Any, delayMillis: Long)
+	{
+		val now = SystemClock.uptimeMillis()
+
+		synchronized(pending) {
+			// Later writes push the key back, but never past the deadline of its first one
+			val firstMillis = pending.remove(key)?.firstMillis ?: now
+
+			pending[key] = Pending(value, firstMillis, minOf(now + delayMillis, firstMillis + delayMillis * MAX_WAIT_FACTOR))
+			reschedule()
+		}
+	}
+
+	fun cancel(key: String)
+	{
+		synchronized(pending) { pending.remove(key) }
+	}
+
+	fun flush() = commit { true }
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Private
+	//---------------------------------------------------------------------------------------------------*/
+	private inline fun commit(isDue: (Pending) -> Boolean)
+	{
+		synchronized(pending) {
+			val values = LinkedHashMap<String, Any>()
+			val iterator = pending.entries.iterator()
+
+			while(iterator.hasNext())
+			{
+				val (key, entry) = iterator.next()
+
+				if(isDue(entry))
+				{
+					values[key] = entry.value
+					iterator.remove()
+				}
+			}
+
+			// Nothing taken out leaves the next deadline as it was, and a flush on an idle app starts no thread
+			if(values.isNotEmpty())
+			{
+				commitCrates(values)
+				reschedule()
+			}
+		}
+	}
+
+	// The earliest deadline decides, a key written once isn't held up by a busy one
+	private fun reschedule()
+	{
+		handler.removeCallbacks(flushRunnable)
+		pending.values.minOfOrNull { it.dueMillis }?.let { handler.postAtTime(flushRunnable, it) }
+	}
+}
@@ -4,11 +4,81 @@ import android.content.Context
 import android.os.Looper
 import androidx.annotation.Keep
 import androidx.annotation.WorkerThread
+import androidx.lifecycle.LiveData
+import androidx.lifecycle.asLiveData
 import com.ownapp.blacksmith.Forger.forge
 import com.ownapp.blacksmith.Forger.unforge
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.withContext
 import kotlin.properties.ReadWriteProperty
 import kotlin.reflect.KProperty
 
+@Keep
+object Crates
+{
+	enum class Storage
+	{
+		/**
+		 * [EncryptedSharedPreferences][androidx.security.crypto.EncryptedSharedPreferences], every key
+		 * and value encrypted on its own and the whole file rewritten on each write.
+		 */
+		ENCRYPTED_PREFERENCES,
+
+		/**
+		 * A single AES-GCM sealed file per namespace, decrypted once on load and written through an
+		 * append log that is compacted from time to time. Better suited to a few hundred crates.
+		 */
+		SEALED_FILE
+	}
+	
+	/**
+	 * Where crates are kept. Set it before the first crate is read or written, e.g. in
+	 * [android.app.Application.onCreate], later changes have no effect. Switching doesn't move
+	 * existing values over.
+	 */
+	@Volatile
+	var storage = Storage.ENCRYPTED_PREFERENCES
+	
+	/**
+	 * Decrypt every stored crate into the in-memory cache with one pass over the preferences,
+	 * afterwards reading a [Crate.value] is a map lookup.
+	 */
+	@WorkerThread
+	fun warm(context: Context) = context.applicationContext.warmCrates()
+	
+	/**
+	 * Persist every pending write-behind value and counter increment right away, and wait until the
+	 * storage has written them.
+	 */
+	@WorkerThread
+	fun flush()
+	{
+		CounterFlusher.flushAll()
+		CrateWriteBehind.flush()
+		awaitCrateWrites()
+	}
+	
+	/**
+	 * How long the encrypted store took to initialize, -1 if it hasn't been initialized yet.
+	 */
+	val initDurationMillis: Long
+		get() = preferencesInitMillis
+	
+	/**
+	 * Build the [MasterKey][androidx.security.crypto.MasterKey] and the encrypted preferences and
+	 * decrypt every crate off the main thread, call it early e.g. from [android.app.Application.onCreate].
+	 *
+	 * Crates read while this is running wait for it instead of initializing a second time.
+	 */
+	suspend fun prewarm(context: Context) = withContext(Dispatchers.IO) {
+		context.applicationContext.warmCrates()
+	}
+}
+
 @Keep
 interface SafeValue<T: Any>
 {
@@ -30,22 +100,59 @@ abstract class CrateValue<T: Any>
 	}
 }
 
+/**
+ * @param type Type the value is stored as, so a crate with a `null` [default] still reads only its own key.
+ */
 @Keep
-sealed class Crate<T: Any>(protected val context: Context, protected val key: String, protected val default: T?): CrateValue<T>()
+sealed class Crate<T: Any>(
+	protected val context: Context
+	, protected val key: String
+	, protected val default: T?
+	, protected val type: Class<*>
+): CrateValue<T>()
 {
 	// override var holder: T? = key.load(default)
 	
-	override var value: T? = context.load(key, default)
-		get() = context.load(key, default)
+	/**
+	 * When above zero, writes are cached immediately and persisted once the value stayed unchanged
+	 * for this long. Meant for crates that change at high frequency.
+	 */
+	var writeBehindMillis: Long = 0L
+	
+	override var value: T?
+		get() = context.load(key, default, type)
 		set(value)
 		{
-			if(field != value)
-			{
-				field = value
-				context.save(key, value)
-			}
+			// Against what is stored, another instance, an external or a rolled back write may have changed it
+			if(value != context.load(key, default, type))
+				persist(value)
 		}
 	
+	/**
+	 * Current value, then every change to it from any crate instance or thread.
+	 *
+	 * Reads go through the crate cache on [Dispatchers.IO], only a key that actually changed is
+	 * decrypted again, and equal values are not emitted twice.
+	 */
+	val flow: Flow<T?> by lazy {
+		CrateChanges.of(key)
+			.map { value }
+			.flowOn(Dispatchers.IO)
+			.distinctUntilChanged()
+	}
+	
+	/**
+	 * [flow] as [LiveData], observed only while active.
+	 */
+	val liveData: LiveData<T?> by lazy { flow.asLiveData() }
+	
+	protected fun persist(value: Any?)
+	{
+		if(writeBehindMillis > 0)
+			context.saveLater(key, value, writeBehindMillis)
+		else context.save(key, value)
+	}
+	
 	operator fun getValue(thisRef: Any?, property: KProperty<*>): T? = value
 	
 	operator fun setValue(thisRef: Any?, property: KProperty<*>, value: T?)
@@ -57,60 +164,40 @@ sealed class Crate<T: Any>(protected val context: Context, protected val key: St
 }
 
 @Keep
-class IntCrate(context: Context, key: String, default: Int = 0): Crate<Int>(context, key, default), SafeValue<Int>, Comparable<Int>
+class IntCrate(context: Context, key: String, default: Int = 0): Crate<Int>(context, key, default, Int::class.javaObjectType), SafeValue<Int>, Comparable<Int>
 {
 	override val safeValue: Int
 		get() = value ?: default ?: -1
 	
 	override fun compareTo(other: Int): Int = value?.compareTo(other) ?: 0
 	
-	operator fun inc(): IntCrate
-	{
-		return if(value != null)
-			this.apply { value!!.inc() }
-		else this
-	}
+	operator fun inc(): IntCrate = apply { value?.let { value = it.inc() } }
 	
-	operator fun dec(): IntCrate
-	{
-		return if(value != null)
-			this.apply { value!!.dec() }
-		else this
-	}
+	operator fun dec(): IntCrate = apply { value?.let { value = it.dec() } }
 }
 
 @Keep
-class LongCrate(context: Context, key: String, default: Long = 0L): Crate<Long>(context, key, default), SafeValue<Long>, Comparable<Long>
+class LongCrate(context: Context, key: String, default: Long = 0L): Crate<Long>(context, key, default, Long::class.javaObjectType), SafeValue<Long>, Comparable<Long>
 {
 	override val safeValue: Long
 		get() = value ?: default ?: -1L
 
 	override fun compareTo(other: Long): Int = value?.compareTo(other) ?: 0
 
-	operator fun inc(): LongCrate
-	{
-		return if(value != null)
-			this.apply { value!!.inc() }
-		else this
-	}
+	operator fun inc(): LongCrate = apply { value?.let { value = it.inc() } }
 
-	operator fun dec(): LongCrate
-	{
-		return if(value != null)
-			this.apply { value!!.dec() }
-		else this
-	}
+	operator fun dec(): LongCrate = apply { value?.let { value = it.dec() } }
 }
 
 @Keep
-class BooleanCrate(context: Context, key: String, default: Boolean? = null): Crate<Boolean>(context, key, default), SafeValue<Boolean>
+class BooleanCrate(context: Context, key: String, default: Boolean? = null): Crate<Boolean>(context, key, default, Boolean::class.javaObjectType), SafeValue<Boolean>
 {
 	override val safeValue: Boolean
 		get() = value == true
 }
 
 @Keep
-open class StringCrate(context: Context, key: String, default: String? = null): Crate<String>(context, key, default), SafeValue<String>
+open class StringCrate(context: Context, key: String, default: String? = null): Crate<String>(context, key, default, String::class.java), SafeValue<String>
 {
 	override val safeValue: String
 		get() = value.orEmpty()
@@ -119,32 +206,61 @@ open class StringCrate(context: Context, key: String, default: String? = null):
 @Keep
 open class ForgedCrate(context: Context, key: String): StringCrate(context, key, "")
 {
-	override var value: String? = context.load(key, default).unforge()
+	// The stored forged text and its plain value, swapped as one so readers on other threads see a matching pair
+	private class Unforged(val raw: String, val value: String)
+	
+	@Volatile
+	private var unforged: Unforged? = null
+	
+	/**
+	 * Forged text as stored, read through the crate cache.
+	 */
+	protected val storedRaw: String
+		get() = context.load(key, "").orEmpty()
+	
+	// Read from the store every time, so flow and liveData see writes made elsewhere
+	override var value: String?
+		get()
+		{
+			val raw = storedRaw
+			
+			// The crate cache hands out the same instance until the stored value changes
+			unforged?.let { if(it.raw === raw) return it.value }
+			
+			return raw.unforge().also { unforged = Unforged(raw, it) }
+		}
 		set(value)
 		{
-			if(field != value)
-			{
-				field = value
-				context.save(key, value.forge())
-			}
+			if(this.value != value)
+				persist(value.forge())
 		}
 }
 
 @Keep
 class TokenCrate(context: Context, key: String): ForgedCrate(context, key)
 {
-	override var value: String? = context.load(key, "").unforge()
+	// Set but not saved yet, with the stored text it was set over, a newer stored value wins over it
+	private class Unsaved(val value: String?, val raw: String)
+	
+	@Volatile
+	private var unsaved: Unsaved? = null
+	
+	override var value: String?
+		get()
+		{
+			unsaved?.let { if(it.raw == storedRaw) return it.value }
+			return super.value
+		}
 		set(value)
 		{
-			if(field != value)
-				field = value
+			if(this.value != value)
+				unsaved = Unsaved(value, storedRaw)
 		}
 	
-	// fun load() { value = context.load(key, "").unforge() }
 	fun save(newValue: String? = value)
 	{
-		value = newValue.orEmpty()
-		context.save(key, value.forge())
+		unsaved = null
+		persist(newValue.orEmpty().forge())
 	}
 	
 	override fun clear() = save("")
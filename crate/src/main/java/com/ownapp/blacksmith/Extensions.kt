@@ -2,24 +2,46 @@ package com.ownapp.blacksmith
 
 import android.content.Context
 import android.content.SharedPreferences
+import android.os.SystemClock
 import android.security.keystore.KeyGenParameterSpec
 import android.security.keystore.KeyProperties
 import androidx.annotation.Keep
+import androidx.annotation.VisibleForTesting
 import androidx.core.content.edit
 import androidx.security.crypto.EncryptedSharedPreferences
 import androidx.security.crypto.MasterKey
 import com.ownapp.blacksmith.Forger.forge
+import timber.log.Timber
 
-private lateinit var sharedPreferences: SharedPreferences
+private val lock = Any()
 
-private val spec = KeyGenParameterSpec.Builder(
-		MasterKey.DEFAULT_MASTER_KEY_ALIAS
-		, KeyProperties.PURPOSE_ENCRYPT or KeyProperties.PURPOSE_DECRYPT
-	)
-	.setBlockModes(KeyProperties.BLOCK_MODE_GCM)
-	.setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
-	.setKeySize(256)
-	.build()
+@Volatile
+private var sharedPreferences: SharedPreferences? = null
+
+/**
+ * How long building the crate storage took, -1 until it happened.
+ */
+@Volatile
+internal var preferencesInitMillis: Long = -1L
+	private set
+
+// Built on first use, the keystore classes aren't there when the crates run on a plain JVM
+private val spec by lazy {
+	KeyGenParameterSpec.Builder(
+			MasterKey.DEFAULT_MASTER_KEY_ALIAS
+			, KeyProperties.PURPOSE_ENCRYPT or KeyProperties.PURPOSE_DECRYPT
+		)
+		.setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+		.setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+		.setKeySize(256)
+		.build()
+}
+
+private fun createCrateStorage(context: Context): SharedPreferences = when(Crates.storage)
+{
+	Crates.Storage.ENCRYPTED_PREFERENCES -> getEncryptedSharedPreferences(context)
+	Crates.Storage.SEALED_FILE -> SealedFilePreferences(context, context.packageName.forge())
+}
 
 private fun getEncryptedSharedPreferences(context: Context): SharedPreferences
 {
@@ -32,41 +54,137 @@ private fun getEncryptedSharedPreferences(context: Context): SharedPreferences
 	)
 }
 
+// Whoever comes in while another thread is initializing waits for it instead of initializing again
+private val Context.preferences: SharedPreferences
+	get() = sharedPreferences ?: synchronized(lock) {
+		sharedPreferences ?: run {
+			val start = SystemClock.elapsedRealtime()
+
+			createCrateStorage(applicationContext).also {
+				CrateCache.attach(it)
+				sharedPreferences = it
+
+				preferencesInitMillis = SystemClock.elapsedRealtime() - start
+				Timber.d("Crate ${Crates.storage} storage initialized in ${preferencesInitMillis}ms on ${Thread.currentThread().name}")
+			}
+		}
+	}
+
+/**
+ * The crate storage itself, for bulk work that has to bypass the per-key helpers.
+ */
+internal val Context.crateStorage: SharedPreferences
+	get() = preferences
+
+/**
+ * Wait for the storage to write what was applied so far, the encrypted preferences need no help.
+ */
+internal fun awaitCrateWrites()
+{
+	(sharedPreferences as? SealedFilePreferences)?.awaitWrites()
+}
+
+/**
+ * Use [preferences] as the crate storage instead of building one, e.g. in-memory preferences in JVM
+ * unit tests.
+ */
+@VisibleForTesting
+internal fun installCrateStorage(preferences: SharedPreferences)
+{
+	synchronized(lock) {
+		CrateCache.clear()
+		CrateCache.attach(preferences)
+		sharedPreferences = preferences
+	}
+}
+
+/**
+ * Decrypt every stored crate in one pass so later [load] calls are served from memory.
+ */
+internal fun Context.warmCrates() = CrateCache.warm(preferences)
+
+private fun SharedPreferences.Editor.put(key: String, value: Any)
+{
+	when(value)
+	{
+		is Long ->  putLong(key, value)
+		is Int -> putInt(key, value)
+		is Float ->  putFloat(key, value)
+		is Boolean -> putBoolean(key, value)
+		else ->  putString(key, value as String)
+	}
+}
+
+private fun <T: Any> T?.toPersisted(): Any = when(this)
+{
+	is Long, is Int, is Float, is Boolean, is String -> this
+	else -> toString()
+}
+
+/**
+ * Persist all [values] with a single editor apply.
+ */
+internal fun commitCrates(values: Map<String, Any>)
+{
+	checkNotNull(sharedPreferences) { "Crate preferences are not initialized" }.edit {
+		values.forEach { (key, value) -> put(key, value) }
+	}
+}
+
 @Keep
 fun <T: Any> Context.save(key: String, value: T?)
 {
-	if(!::sharedPreferences.isInitialized)
-		sharedPreferences = getEncryptedSharedPreferences(this)
+	val persisted = value.toPersisted()
+	val preferences = this.preferences
+
+	CrateCache.write(key, persisted)
+	CrateWriteBehind.cancel(key)
 
-	sharedPreferences.edit {
-		when(value)
+	if(!CrateBatch.offer(key, persisted))
+	{
+		try
 		{
-			is Long ->  putLong(key, value)
-			is Int -> putInt(key, value)
-			is Float ->  putFloat(key, value)
-			is Boolean -> putBoolean(key, value)
-			is String ->  putString(key, value)
-			else ->  putString(key, value.toString())
+			preferences.edit { put(key, persisted) }
+		}
+		catch(e: RuntimeException)
+		{
+			// Readers mustn't see a value that never made it to the store
+			CrateCache.invalidate(key)
+			throw e
 		}
 	}
 }
 
+/**
+ * Cache [value] now and persist it once [key] stayed unchanged for [delayMillis].
+ */
+@Keep
+fun <T: Any> Context.saveLater(key: String, value: T?, delayMillis: Long)
+{
+	val persisted = value.toPersisted()
+
+	// Make sure the preferences exist by the time the write-behind flushes
+	this.preferences
+	CounterFlusher.register(this)
+	CrateCache.write(key, persisted)
+
+	if(!CrateBatch.offer(key, persisted))
+		CrateWriteBehind.schedule(key, persisted, delayMillis)
+}
+
+/**
+ * @param type Type [key] is stored as, so only [key] is decrypted. Taken from [defaultValue] when not given.
+ */
 @Keep
 @Suppress("UNCHECKED_CAST")
-fun <T: Any> Context.load(key: String, defaultValue: T? = null): T?
+fun <T: Any> Context.load(key: String, defaultValue: T? = null, type: Class<*>? = defaultValue?.javaClass): T?
 {
-	if(!::sharedPreferences.isInitialized)
-		sharedPreferences = getEncryptedSharedPreferences(this)
+	val value = CrateCache.read(key) { preferences.readStored(key, type) }
 
-	with(sharedPreferences) {
-		return when(defaultValue)
-		{
-			is Long -> getLong(key, defaultValue)
-			is Int -> getInt(key, defaultValue)
-			is Float -> getFloat(key, defaultValue)
-			is Boolean -> getBoolean(key, defaultValue)
-			is String -> getString(key, defaultValue)
-			else -> getString(key, defaultValue.toString())
-		}  as? T? ?: defaultValue
+	return when
+	{
+		value == null -> defaultValue
+		type == null || type.isInstance(value) -> value as T
+		else -> defaultValue
 	}
-}
\ No newline at end of file
+}
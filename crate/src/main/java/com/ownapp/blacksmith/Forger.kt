@@ -5,11 +5,38 @@ import android.content.pm.ApplicationInfo
 import android.util.Base64
 import androidx.annotation.Keep
 import timber.log.Timber
+import java.io.InputStream
+import java.io.OutputStream
+import java.nio.BufferOverflowException
+import java.nio.ByteBuffer
 
 @Keep
 object Forger
 {
-	init { System.loadLibrary("forger_ndk") }
+	/**
+	 * Implementations of the hiding scheme, both produce the exact same output.
+	 */
+	enum class Backend
+	{
+		/** The `forger_ndk` JNI library, loaded the first time it's used */
+		NATIVE,
+
+		/** Plain Kotlin, no native library needed e.g. in JVM unit tests */
+		JVM
+	}
+
+	/**
+	 * Implementation used by every call of this object.
+	 */
+	@Volatile
+	var backend: Backend = Backend.NATIVE
+
+	private val engine: ForgerEngine
+		get() = when(backend)
+		{
+			Backend.NATIVE -> NativeForger
+			Backend.JVM -> JvmForger
+		}
 
 
 	/**
@@ -18,14 +45,14 @@ object Forger
 	 * @return A [Base64.encode] encoded value of (plainText XOR key)
 	 */
 	@Keep
-	external fun String?.mold(): String
+	fun String?.mold(): String = engine.mold(this)
 
 	/**
 	 * Our hook to the JNI hiding method.
 	 * @receiver [Base64]-encoded text to unhide (XOR key is hard-coded in the JNI app)
 	 * @return A string with the original plaintext (cipherText XOR key)
 	 */
-	@Keep external fun String?.unmold(): String
+	@Keep fun String?.unmold(): String = engine.unmold(this)
 
 	/**
 	 * A more complicated way to do hiding and support error fallback for [mold]. Use this
@@ -33,7 +60,7 @@ object Forger
 	 * @receiver Text to hide (XOR key is hard-coded in the JNI app)
 	 * @return A [Base64.encode] encoded value of (plainText XOR key)
 	 */
-	@Keep external fun String?.forge(): String
+	@Keep fun String?.forge(): String = engine.forge(this)
 
 	/**
 	 * A more complicated wayunmo to do unhiding and support error fallback for [unmold]. Use this
@@ -41,7 +68,89 @@ object Forger
 	 * @receiver [Base64]-encoded text to unhide (XOR key is hard-coded in the JNI app)
 	 * @return A string with the original plaintext (cipherText XOR key)
 	 */
-	@Keep external fun String?.unforge(): String
+	@Keep fun String?.unforge(): String = engine.unforge(this)
+
+	/**
+	 * [forge] every text with a single JNI call.
+	 * @param texts Texts to hide, `null` is forged as an empty text
+	 * @return Forged texts in the same order
+	 */
+	@Keep fun forgeAll(texts: Array<out String?>): Array<String> = engine.forgeAll(texts)
+
+	/**
+	 * [unforge] every text with a single JNI call.
+	 * @param texts Forged texts, `null` is unforged as an empty text
+	 * @return Original texts in the same order
+	 */
+	@Keep fun unforgeAll(texts: Array<out String?>): Array<String> = engine.unforgeAll(texts)
+
+	/**
+	 * Capacity that is always enough to [forge] [length] bytes into.
+	 */
+	fun forgedCapacity(length: Int): Int = length * 5
+
+	/**
+	 * [forge] the remaining bytes of a direct buffer into another one, skipping any UTF conversion.
+	 * Bytes must not contain `0`, the same as a forged [String].
+	 * @param input Direct buffer to hide, consumed up to its limit
+	 * @param output Direct buffer receiving the ASCII forged value, see [forgedCapacity]
+	 * @return Number of bytes written to [output]
+	 * @throws BufferOverflowException If [output] doesn't have enough remaining space
+	 */
+	@Keep
+	fun forge(input: ByteBuffer, output: ByteBuffer): Int
+	{
+		require(backend != Backend.NATIVE || input.isDirect && output.isDirect) { "Forger only works on direct buffers" }
+
+		return engine.forgeBuffer(input, input.position(), input.remaining(), output, output.position(), output.remaining())
+			.also { written ->
+				if(written < 0)
+					throw BufferOverflowException()
+
+				input.position(input.limit())
+				output.position(output.position() + written)
+			}
+	}
+
+	/**
+	 * [unforge] the remaining bytes of a direct buffer into another one, skipping any UTF conversion.
+	 * @param input Direct buffer holding a forged value, consumed up to its limit
+	 * @param output Direct buffer receiving the original bytes, needs at least as much room as [input] remains
+	 * @return Number of bytes written to [output]
+	 * @throws BufferOverflowException If [output] doesn't have enough remaining space
+	 */
+	@Keep
+	fun unforge(input: ByteBuffer, output: ByteBuffer): Int
+	{
+		require(backend != Backend.NATIVE || input.isDirect && output.isDirect) { "Forger only works on direct buffers" }
+
+		return engine.unforgeBuffer(input, input.position(), input.remaining(), output, output.position(), output.remaining())
+			.also { written ->
+				if(written < 0)
+					throw BufferOverflowException()
+
+				input.position(input.limit())
+				output.position(output.position() + written)
+			}
+	}
+
+	/**
+	 * Forge a payload of any size, e.g. a cached API response, with constant memory use.
+	 *
+	 * The bytes written are the same as [forge] gives for the same bytes, and as [String.forge] for a
+	 * text without `\u0000` or supplementary characters whose UTF-8 bytes are streamed.
+	 * Streams are neither buffered nor closed here.
+	 * @return Number of bytes written to [output]
+	 */
+	@Keep
+	fun forgeStream(input: InputStream, output: OutputStream): Long = JvmForger.forgeStream(input, output)
+
+	/**
+	 * Reverse of [forgeStream], with constant memory use.
+	 * @return Number of bytes written to [output]
+	 */
+	@Keep
+	fun unforgeStream(input: InputStream, output: OutputStream): Long = JvmForger.unforgeStream(input, output)
 
 	/**
 	 * Log text and hidden text for checking.
@@ -0,0 +1,32 @@
+package com.ownapp.blacksmith
+
+import java.nio.ByteBuffer
+
+/**
+ * One implementation of the XOR + Base64 hiding scheme behind [Forger].
+ */
+internal interface ForgerEngine
+{
+	fun mold(text: String?): String
+	fun unmold(text: String?): String
+	fun forge(text: String?): String
+	fun unforge(text: String?): String
+	fun forgeAll(texts: Array<out String?>): Array<String>
+	fun unforgeAll(texts: Array<out String?>): Array<String>
+
+	/**
+	 * @return Number of bytes written, or minus the required capacity when output is too small
+	 */
+	fun forgeBuffer(
+		input: ByteBuffer, inputOffset: Int, inputLength: Int
+		, output: ByteBuffer, outputOffset: Int, outputLength: Int
+	): Int
+
+	/**
+	 * @return Number of bytes written, or minus the required capacity when output is too small
+	 */
+	fun unforgeBuffer(
+		input: ByteBuffer, inputOffset: Int, inputLength: Int
+		, output: ByteBuffer, outputOffset: Int, outputLength: Int
+	): Int
+}
@@ -0,0 +1,502 @@
+package com.ownapp.blacksmith
+
+import java.io.InputStream
+import java.io.OutputStream
+import java.nio.ByteBuffer
+
+/**
+ * Pure Kotlin [ForgerEngine], byte for byte compatible with `hidingutil.c`.
+ *
+ * Like the JNI side it works on modified UTF-8 bytes, splits a value into pieces of at most
+ * [PIECE_LENGTH] bytes that each end before a byte equal to its key byte, and molds every piece from
+ * key offset 0 followed by a `,`.
+ */
+internal object JvmForger: ForgerEngine
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Constant
+	//---------------------------------------------------------------------------------------------------*/
+	private const val PASSWORD_KEY = "K76NhYbhtxuRvaNSXqHQ2JcWnC6jKdyye57QG4KaRrHpJkGBkYmCjCFTbhtEGSUhY5FxhjfKupzrEyJntb8gzPqa8hGSQxcF5bBKuwZpyyvvnWJg8RpTBqrtFZ9xnjr3"
+	private const val BASE64_CHARSET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+
+	// Largest piece the native fixed size buffers ever encoded, and the most a piece decodes to
+	const val PIECE_LENGTH = 96
+	private const val DECODED_LENGTH = 128
+	private const val STREAM_BUFFER_LENGTH = 8 * 1024
+
+	const val SEPARATOR = ','.code.toByte()
+	private const val PADDING = '='.code.toByte()
+
+	// sizeof(passwordKey) in C counts the terminating '\0' as part of the key
+	private val key = ByteArray(PASSWORD_KEY.length + 1).also { bytes ->
+		PASSWORD_KEY.forEachIndexed { index, char -> bytes[index] = char.code.toByte() }
+	}
+
+	private val encodingTable = ByteArray(BASE64_CHARSET.length) { BASE64_CHARSET[it].code.toByte() }
+	private val decodingTable = IntArray(256) { -1 }.also { table ->
+		BASE64_CHARSET.forEachIndexed { index, char -> table[char.code] = index }
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Piece
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * @return Length of the next piece of [input], `0` when its first byte equals the key's first byte
+	 */
+	fun pieceLength(input: ByteArray, offset: Int, length: Int): Int
+	{
+		var index = 0
+
+		while(index < length && index < PIECE_LENGTH && input[offset + index] != key[index % key.size])
+			index++
+
+		return index
+	}
+
+	fun encodedLength(length: Int): Int = (length + 2) / 3 * 4
+
+	/**
+	 * XOR a piece with the key and Base64 encode it into [output].
+	 * @return Number of bytes written
+	 */
+	fun moldPiece(input: ByteArray, offset: Int, length: Int, output: ByteArray, outputOffset: Int): Int
+	{
+		var index = 0
+		var written = outputOffset
+
+		while(index < length)
+		{
+			val remaining = length - index
+			val b0 = xor(input, offset, index)
+			val b1 = if(remaining > 1) xor(input, offset, index + 1) else 0
+			val b2 = if(remaining > 2) xor(input, offset, index + 2) else 0
+
+			output[written++] = encodingTable[b0 ushr 2]
+			output[written++] = encodingTable[((b0 and 0x03) shl 4) or (b1 ushr 4)]
+			output[written++] = if(remaining > 1) encodingTable[((b1 and 0x0f) shl 2) or (b2 ushr 6)] else PADDING
+			output[written++] = if(remaining > 2) encodingTable[b2 and 0x3f] else PADDING
+
+			index += 3
+		}
+
+		return written - outputOffset
+	}
+
+	private fun xor(input: ByteArray, offset: Int, index: Int): Int =
+		(input[offset + index].toInt() xor key[index % key.size].toInt()) and 0xff
+
+	/**
+	 * Decodes one piece a character at a time, mirroring `Base64Decode` and `unhide` in C:
+	 * unknown characters are skipped, `=` ends the piece, a block stops at its first `0` byte,
+	 * at most [DECODED_LENGTH] bytes are decoded and the XOR output ends at its first `0`.
+	 */
+	class PieceDecoder
+	{
+		private val block = IntArray(4)
+		private var count = 0
+		private var decoded = 0
+		private var isDone = false
+
+		fun reset()
+		{
+			block.fill(0)
+			count = 0
+			decoded = 0
+			isDone = false
+		}
+
+		/**
+		 * @return Number of bytes written to [output]
+		 */
+		fun feed(char: Byte, output: ByteArray, outputOffset: Int): Int
+		{
+			if(isDone)
+				return 0
+
+			if(char == PADDING)
+			{
+				isDone = true
+				return decodeBlock(output, outputOffset)
+			}
+
+			val value = decodingTable[char.toInt() and 0xff]
+
+			if(value < 0)
+				return 0
+
+			block[count] = value
+			count = (count + 1) % 4
+
+			return if(count == 0)
+				decodeBlock(output, outputOffset).also { block.fill(0) }
+			else 0
+		}
+
+		private fun decodeBlock(output: ByteArray, outputOffset: Int): Int
+		{
+			var written = 0
+
+			for(index in 0 until 3)
+			{
+				val byte = when(index)
+				{
+					0 -> (block[0] shl 2) or (block[1] ushr 4)
+					1 -> (block[1] shl 4) or (block[2] ushr 2)
+					else -> (block[2] shl 6) or block[3]
+				} and 0xff
+
+				if(byte == 0 || decoded >= DECODED_LENGTH)
+					break
+
+				val plain = byte xor key[decoded % key.size].toInt()
+
+				if(plain == 0)
+				{
+					isDone = true
+					break
+				}
+
+				output[outputOffset + written++] = plain.toByte()
+				decoded++
+			}
+
+			return written
+		}
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Bytes
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * @return Exact number of bytes [forgeBytes] writes for [input]
+	 * @throws IllegalArgumentException If a piece would be empty, which the format can't represent
+	 */
+	fun forgedLength(input: ByteArray, offset: Int, length: Int): Int
+	{
+		var position = 0
+		var forged = 0
+
+		while(position < length)
+		{
+			val piece = pieceLength(input, offset + position, length - position)
+			require(piece > 0) { "Text cannot be forged" }
+
+			forged += encodedLength(piece) + 1
+			position += piece
+		}
+
+		return forged
+	}
+
+	fun forgeBytes(input: ByteArray, offset: Int, length: Int, output: ByteArray, outputOffset: Int): Int
+	{
+		var position = 0
+		var written = outputOffset
+
+		while(position < length)
+		{
+			val piece = pieceLength(input, offset + position, length - position)
+			require(piece > 0) { "Text cannot be forged" }
+
+			written += moldPiece(input, offset + position, piece, output, written)
+			output[written++] = SEPARATOR
+			position += piece
+		}
+
+		return written - outputOffset
+	}
+
+	/**
+	 * Output needs at least [length] bytes, unforged bytes never outnumber the forged ones.
+	 */
+	fun unforgeBytes(input: ByteArray, offset: Int, length: Int, output: ByteArray, outputOffset: Int): Int
+	{
+		val decoder = PieceDecoder()
+		var written = outputOffset
+
+		for(index in offset until offset + length)
+		{
+			if(input[index] == SEPARATOR)
+				decoder.reset()
+			else written += decoder.feed(input[index], output, written)
+		}
+
+		return written - outputOffset
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Stream
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * Forge [input] into [output] a piece at a time, memory use doesn't depend on the payload size.
+	 * Produces the same bytes as [forgeBytes] over the whole payload.
+	 * @return Number of bytes written
+	 */
+	fun forgeStream(input: InputStream, output: OutputStream): Long
+	{
+		val buffer = ByteArray(STREAM_BUFFER_LENGTH)
+		val piece = ByteArray(PIECE_LENGTH)
+		val forged = ByteArray(STREAM_BUFFER_LENGTH)
+		var pieceLength = 0
+		var forgedLength = 0
+		var total = 0L
+
+		fun flushPiece()
+		{
+			require(pieceLength > 0) { "Text cannot be forged" }
+
+			// Room for one more encoded piece and its separator
+			if(forgedLength + encodedLength(PIECE_LENGTH) + 1 > forged.size)
+			{
+				output.write(forged, 0, forgedLength)
+				total += forgedLength
+				forgedLength = 0
+			}
+
+			forgedLength += moldPiece(piece, 0, pieceLength, forged, forgedLength)
+			forged[forgedLength++] = SEPARATOR
+			pieceLength = 0
+		}
+
+		while(true)
+		{
+			val read = input.read(buffer)
+
+			if(read < 0)
+				break
+
+			for(index in 0 until read)
+			{
+				val byte = buffer[index]
+
+				if(pieceLength == PIECE_LENGTH || byte == key[pieceLength % key.size])
+					flushPiece()
+
+				// A piece can't start with the key's first byte either
+				require(pieceLength > 0 || byte != key[0]) { "Text cannot be forged" }
+				piece[pieceLength++] = byte
+			}
+		}
+
+		if(pieceLength > 0)
+			flushPiece()
+
+		output.write(forged, 0, forgedLength)
+		return total + forgedLength
+	}
+
+	/**
+	 * Unforge [input] into [output] a character at a time, memory use doesn't depend on the payload size.
+	 * Produces the same bytes as [unforgeBytes] over the whole payload.
+	 * @return Number of bytes written
+	 */
+	fun unforgeStream(input: InputStream, output: OutputStream): Long
+	{
+		val buffer = ByteArray(STREAM_BUFFER_LENGTH)
+		val unforged = ByteArray(STREAM_BUFFER_LENGTH)
+		val decoder = PieceDecoder()
+		var unforgedLength = 0
+		var total = 0L
+
+		while(true)
+		{
+			val read = input.read(buffer)
+
+			if(read < 0)
+				break
+
+			for(index in 0 until read)
+			{
+				if(buffer[index] == SEPARATOR)
+				{
+					decoder.reset()
+					continue
+				}
+
+				// A character decodes to at most 3 bytes
+				if(unforgedLength + 3 > unforged.size)
+				{
+					output.write(unforged, 0, unforgedLength)
+					total += unforgedLength
+					unforgedLength = 0
+				}
+
+				unforgedLength += decoder.feed(buffer[index], unforged, unforgedLength)
+			}
+		}
+
+		output.write(unforged, 0, unforgedLength)
+		return total + unforgedLength
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Implement
+	//---------------------------------------------------------------------------------------------------*/
+	override fun mold(text: String?): String
+	{
+		val bytes = text.toModifiedUtf8()
+		val output = ByteArray(encodedLength(PIECE_LENGTH))
+
+		return String(output, 0, moldPiece(bytes, 0, pieceLength(bytes, 0, bytes.size), output, 0), Charsets.ISO_8859_1)
+	}
+
+	override fun unmold(text: String?): String
+	{
+		val bytes = text.toModifiedUtf8()
+		val output = ByteArray(DECODED_LENGTH)
+		val decoder = PieceDecoder()
+		var written = 0
+
+		bytes.forEach { written += decoder.feed(it, output, written) }
+
+		return output.fromModifiedUtf8(written)
+	}
+
+	override fun forge(text: String?): String
+	{
+		val bytes = text.toModifiedUtf8()
+		val output = ByteArray(forgedLength(bytes, 0, bytes.size))
+
+		return String(output, 0, forgeBytes(bytes, 0, bytes.size, output, 0), Charsets.ISO_8859_1)
+	}
+
+	override fun unforge(text: String?): String
+	{
+		val bytes = text.toModifiedUtf8()
+		val output = ByteArray(bytes.size)
+
+		return output.fromModifiedUtf8(unforgeBytes(bytes, 0, bytes.size, output, 0))
+	}
+
+	override fun forgeAll(texts: Array<out String?>): Array<String> = Array(texts.size) { forge(texts[it]) }
+
+	override fun unforgeAll(texts: Array<out String?>): Array<String> = Array(texts.size) { unforge(texts[it]) }
+
+	override fun forgeBuffer(
+		input: ByteBuffer, inputOffset: Int, inputLength: Int
+		, output: ByteBuffer, outputOffset: Int, outputLength: Int
+	): Int
+	{
+		val bytes = input.read(inputOffset, inputLength)
+		val required = forgedLength(bytes, 0, bytes.size)
+
+		if(required > outputLength)
+			return -required
+
+		return ByteArray(required).let {
+			forgeBytes(bytes, 0, bytes.size, it, 0).also { written -> output.write(outputOffset, it, written) }
+		}
+	}
+
+	override fun unforgeBuffer(
+		input: ByteBuffer, inputOffset: Int, inputLength: Int
+		, output: ByteBuffer, outputOffset: Int, outputLength: Int
+	): Int
+	{
+		if(inputLength > outputLength)
+			return -inputLength
+
+		val bytes = input.read(inputOffset, inputLength)
+
+		return ByteArray(inputLength).let {
+			unforgeBytes(bytes, 0, bytes.size, it, 0).also { written -> output.write(outputOffset, it, written) }
+		}
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Private
+	//---------------------------------------------------------------------------------------------------*/
+	private fun ByteBuffer.read(offset: Int, length: Int): ByteArray =
+		ByteArray(length).also { duplicate().apply { position(offset) }.get(it) }
+
+	private fun ByteBuffer.write(offset: Int, bytes: ByteArray, length: Int)
+	{
+		duplicate().apply { position(offset) }.put(bytes, 0, length)
+	}
+
+	/**
+	 * Same bytes `GetStringUTFChars` hands to the native side: `\u0000` takes two bytes and
+	 * supplementary characters are written as two three-byte surrogates.
+	 */
+	fun String?.toModifiedUtf8(): ByteArray
+	{
+		if(this == null)
+			return ByteArray(0)
+
+		var length = 0
+
+		forEach { char ->
+			length += when(char.code)
+			{
+				in 0x01..0x7f -> 1
+				in 0x00..0x7ff -> 2
+				else -> 3
+			}
+		}
+
+		val bytes = ByteArray(length)
+		var index = 0
+
+		forEach { char ->
+			val code = char.code
+
+			when(code)
+			{
+				in 0x01..0x7f -> bytes[index++] = code.toByte()
+				in 0x00..0x7ff ->
+				{
+					bytes[index++] = (0xc0 or (code ushr 6)).toByte()
+					bytes[index++] = (0x80 or (code and 0x3f)).toByte()
+				}
+				else ->
+				{
+					bytes[index++] = (0xe0 or (code ushr 12)).toByte()
+					bytes[index++] = (0x80 or ((code ushr 6) and 0x3f)).toByte()
+					bytes[index++] = (0x80 or (code and 0x3f)).toByte()
+				}
+			}
+		}
+
+		return bytes
+	}
+
+	/**
+	 * Reverse of [toModifiedUtf8], malformed bytes are taken as is like `NewStringUTF` does.
+	 */
+	fun ByteArray.fromModifiedUtf8(length: Int): String = with(StringBuilder(length)) {
+		var index = 0
+
+		while(index < length)
+		{
+			val byte = this@fromModifiedUtf8[index].toInt() and 0xff
+
+			when
+			{
+				byte ushr 5 == 0x06 && index + 1 < length ->
+				{
+					append((((byte and 0x1f) shl 6) or (this@fromModifiedUtf8[index + 1].toInt() and 0x3f)).toChar())
+					index += 2
+				}
+				byte ushr 4 == 0x0e && index + 2 < length ->
+				{
+					append((((byte and 0x0f) shl 12)
+						or ((this@fromModifiedUtf8[index + 1].toInt() and 0x3f) shl 6)
+						or (this@fromModifiedUtf8[index + 2].toInt() and 0x3f)).toChar())
+					index += 3
+				}
+				else ->
+				{
+					append(byte.toChar())
+					index++
+				}
+			}
+		}
+
+		toString()
+	}
+}
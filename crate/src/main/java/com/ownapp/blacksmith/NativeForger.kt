@@ -0,0 +1,38 @@
+package com.ownapp.blacksmith
+
+import androidx.annotation.Keep
+import java.nio.ByteBuffer
+
+/**
+ * [ForgerEngine] backed by `forger_ndk`, the library is loaded the first time this object is used.
+ *
+ * Setting the [LIBRARY_PATH_PROPERTY] system property loads that build of the library instead, e.g.
+ * one compiled for the host JVM to benchmark against [JvmForger].
+ */
+@Keep
+internal object NativeForger: ForgerEngine
+{
+	const val LIBRARY_PATH_PROPERTY = "forger.library"
+
+	init
+	{
+		System.getProperty(LIBRARY_PATH_PROPERTY)?.let { System.load(it) } ?: System.loadLibrary("forger_ndk")
+	}
+
+	@Keep external override fun mold(text: String?): String
+	@Keep external override fun unmold(text: String?): String
+	@Keep external override fun forge(text: String?): String
+	@Keep external override fun unforge(text: String?): String
+	@Keep external override fun forgeAll(texts: Array<out String?>): Array<String>
+	@Keep external override fun unforgeAll(texts: Array<out String?>): Array<String>
+
+	@Keep external override fun forgeBuffer(
+		input: ByteBuffer, inputOffset: Int, inputLength: Int
+		, output: ByteBuffer, outputOffset: Int, outputLength: Int
+	): Int
+
+	@Keep external override fun unforgeBuffer(
+		input: ByteBuffer, inputOffset: Int, inputLength: Int
+		, output: ByteBuffer, outputOffset: Int, outputLength: Int
+	): Int
+}
@@ -0,0 +1,91 @@
+package com.ownapp.blacksmith
+
+import android.content.Context
+import android.util.Base64
+import androidx.annotation.Keep
+import timber.log.Timber
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+
+/**
+ * Crate for any value that has a [CrateCodec].
+ *
+ * The value is encoded once per write and stored as Base64. The decoded object is kept until the
+ * stored value changes, so reading an unchanged crate doesn't decode again.
+ *
+ * ```
+ * val recentIds = ObjectCrate(context, "recent_ids", CrateCodecs.list(CrateCodecs.LONG), emptyList())
+ * ```
+ */
+@Keep
+class ObjectCrate<T: Any>(
+	context: Context
+	, key: String
+	, private val codec: CrateCodec<T>
+	, default: T? = null
+): Crate<T>(context, key, default, String::class.java)
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	// The stored text and what it decodes to, swapped as one so readers on other threads see a matching pair
+	private class Decoded<T>(val raw: String, val value: T?)
+
+	@Volatile
+	private var decoded: Decoded<T>? = null
+
+	override var value: T?
+		get()
+		{
+			val raw = context.load(key, "")
+
+			if(raw.isNullOrEmpty())
+				return default
+
+			// The crate cache hands out the same instance until the stored value changes
+			decoded?.let { if(it.raw === raw) return it.value }
+
+			return decode(raw).also { decoded = Decoded(raw, it) }
+		}
+		set(value)
+		{
+			val raw = value?.let { encode(it) } ?: ""
+
+			// Against what is stored, another instance or an external write may have changed it
+			if(raw != context.load(key, ""))
+			{
+				decoded = Decoded(raw, value)
+				persist(raw)
+			}
+		}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Private
+	//---------------------------------------------------------------------------------------------------*/
+	private fun encode(value: T): String
+	{
+		val bytes = ByteArrayOutputStream().also { output ->
+			DataOutputStream(output).use { codec.encode(value, it) }
+		}.toByteArray()
+
+		return Base64.encodeToString(bytes, Base64.NO_WRAP)
+	}
+
+	private fun decode(raw: String): T? = try
+	{
+		DataInputStream(Base64.decode(raw, Base64.NO_WRAP).inputStream()).use { codec.decode(it) }
+	}
+	catch(e: IOException)
+	{
+		Timber.e(e, "Crate $key cannot be decoded")
+		default
+	}
+	catch(e: IllegalArgumentException)
+	{
+		Timber.e(e, "Crate $key is not valid Base64")
+		default
+	}
+}
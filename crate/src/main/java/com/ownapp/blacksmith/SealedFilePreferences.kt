@@ -0,0 +1,236 @@
+package com.ownapp.blacksmith
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.os.Handler
+import android.os.Looper
+import timber.log.Timber
+import java.io.IOException
+import java.util.WeakHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+
+/**
+ * [SharedPreferences] over a [CrateFileStore], so the crate cache, batches and write-behind work on
+ * it unchanged.
+ *
+ * Everything is decrypted once when created and served from memory afterwards. An editor commit
+ * becomes one sealed log record written on a single background thread, instead of a full
+ * re-encryption and rewrite of the XML file like [androidx.security.crypto.EncryptedSharedPreferences].
+ *
+ * Applied writes still queued when the UI is hidden are waited for through [Crates.flush], as the
+ * framework waits for its pending applies when an activity stops.
+ */
+internal class SealedFilePreferences(context: Context, name: String): SharedPreferences
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Constant
+	//---------------------------------------------------------------------------------------------------*/
+	companion object
+	{
+		private const val AWAIT_TIMEOUT_MILLIS = 5_000L
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	private val store = CrateFileStore(context.applicationContext, name)
+	private val lock = Any()
+	private val values: MutableMap<String, Any> = store.load()
+
+	// Keeps log records in commit order
+	private val writer = Executors.newSingleThreadExecutor { Thread(it, "CrateFileStore-$name") }
+
+	// Like the framework implementation, listeners are weakly held and called on the main thread
+	private val listeners = WeakHashMap<SharedPreferences.OnSharedPreferenceChangeListener, Any>()
+	private val mainHandler = Handler(Looper.getMainLooper())
+
+	init
+	{
+		CounterFlusher.register(context)
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Public
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * Block until every write queued so far is on disk.
+	 */
+	fun awaitWrites()
+	{
+		try
+		{
+			// Single threaded, once this runs every earlier record is written
+			writer.submit {}.get(AWAIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+		}
+		catch(e: TimeoutException)
+		{
+			Timber.w("Crate store writes still pending after ${AWAIT_TIMEOUT_MILLIS}ms")
+		}
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Implement
+	//---------------------------------------------------------------------------------------------------*/
+	override fun getAll(): MutableMap<String, *> = synchronized(lock) { HashMap(values) }
+
+	override fun getString(key: String?, defValue: String?): String? = synchronized(lock) {
+		values[key] as String? ?: defValue
+	}
+
+	@Suppress("UNCHECKED_CAST")
+	override fun getStringSet(key: String?, defValues: MutableSet<String>?): MutableSet<String>? = synchronized(lock) {
+		(values[key] as Set<String>?)?.let { HashSet(it) } ?: defValues
+	}
+
+	override fun getInt(key: String?, defValue: Int): Int = synchronized(lock) { values[key] as Int? ?: defValue }
+
+	override fun getLong(key: String?, defValue: Long): Long = synchronized(lock) { values[key] as Long? ?: defValue }
+
+	override fun getFloat(key: String?, defValue: Float): Float = synchronized(lock) { values[key] as Float? ?: defValue }
+
+	override fun getBoolean(key: String?, defValue: Boolean): Boolean = synchronized(lock) {
+		values[key] as Boolean? ?: defValue
+	}
+
+	override fun contains(key: String?): Boolean = synchronized(lock) { values.containsKey(key) }
+
+	override fun edit(): SharedPreferences.Editor = Editor()
+
+	override fun registerOnSharedPreferenceChangeListener(listener: SharedPreferences.OnSharedPreferenceChangeListener?)
+	{
+		synchronized(listeners) { listeners[listener] = Unit }
+	}
+
+	override fun unregisterOnSharedPreferenceChangeListener(listener: SharedPreferences.OnSharedPreferenceChangeListener?)
+	{
+		synchronized(listeners) { listeners.remove(listener) }
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Private
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * Apply [changes] in memory and queue their log record, a `null` value removes its key.
+	 */
+	private fun commitChanges(isClear: Boolean, changes: Map<String, Any?>): Future<*>
+	{
+		val changedKeys = ArrayList<String>()
+
+		val future = synchronized(lock) {
+			if(isClear)
+				values.clear()
+
+			changes.forEach { (key, value) ->
+				if(value == null)
+				{
+					if(values.remove(key) != null || isClear)
+						changedKeys.add(key)
+				}
+				else if(values.put(key, value) != value)
+					changedKeys.add(key)
+			}
+
+			// Submitted under the lock, so records land in the log in the same order as in memory
+			writer.submit(Runnable {
+				try
+				{
+					store.append(isClear, changes)
+
+					if(store.shouldCompact)
+						store.compact(synchronized(lock) { HashMap(values) })
+				}
+				catch(e: IOException)
+				{
+					// Nobody waits on an apply, leave a trace at least
+					Timber.e(e, "Crate store write failed")
+					throw e
+				}
+			})
+		}
+
+		notifyListeners(isClear, changedKeys)
+		return future
+	}
+
+	private fun notifyListeners(isClear: Boolean, keys: List<String>)
+	{
+		if(!isClear && keys.isEmpty())
+			return
+
+		if(Looper.myLooper() != Looper.getMainLooper())
+		{
+			mainHandler.post { notifyListeners(isClear, keys) }
+			return
+		}
+
+		val listeners = synchronized(listeners) { listeners.keys.toList() }
+
+		listeners.forEach { listener ->
+			if(isClear)
+				listener.onSharedPreferenceChanged(this, null)
+
+			keys.asReversed().forEach { listener.onSharedPreferenceChanged(this, it) }
+		}
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Editor
+	//---------------------------------------------------------------------------------------------------*/
+	private inner class Editor: SharedPreferences.Editor
+	{
+		private val changes = LinkedHashMap<String, Any?>()
+		private var isClear = false
+
+		private fun put(key: String?, value: Any?): SharedPreferences.Editor = synchronized(this) {
+			changes[checkNotNull(key) { "Crate key cannot be null" }] = value
+			this
+		}
+
+		override fun putString(key: String?, value: String?) = put(key, value)
+		override fun putStringSet(key: String?, values: MutableSet<String>?) = put(key, values?.let { HashSet(it) })
+		override fun putInt(key: String?, value: Int) = put(key, value)
+		override fun putLong(key: String?, value: Long) = put(key, value)
+		override fun putFloat(key: String?, value: Float) = put(key, value)
+		override fun putBoolean(key: String?, value: Boolean) = put(key, value)
+		override fun remove(key: String?) = put(key, null)
+
+		override fun clear(): SharedPreferences.Editor = synchronized(this) {
+			isClear = true
+			this
+		}
+
+		override fun commit(): Boolean
+		{
+			return try
+			{
+				drain().get()
+				true
+			}
+			catch(e: ExecutionException)
+			{
+				false
+			}
+		}
+
+		override fun apply()
+		{
+			drain()
+		}
+
+		private fun drain(): Future<*> = synchronized(this) {
+			commitChanges(isClear, LinkedHashMap(changes)).also {
+				changes.clear()
+				isClear = false
+			}
+		}
+	}
+}
@@ -7,84 +7,80 @@
 #define BASE64CHARSET   "ABCDEFGHIJKLMNOPQRSTUVWXYZ"\
                         "abcdefghijklmnopqrstuvwxyz"\
                         "0123456789"\
-                        "+/";
+                        "+/"
 
-int decodeblock(char *input, char *output, int oplen){
-    int rc = 0;
-    char decodedstr[ENCODERLEN + 1] = "";
+static const char encodingtable[TABLELEN + 2] = BASE64CHARSET;
 
-    decodedstr[0] = input[0] << 2 | input[1] >> 4;
-    decodedstr[1] = input[1] << 4 | input[2] >> 2;
-    decodedstr[2] = input[2] << 6 | input[3] >> 0;
-    strncat(output, decodedstr, oplen-strlen(output));
+/*
+ * Appends the bytes of one decoded block up to its first '\0', the same way the former
+ * strncat based implementation did, so existing forged values keep decoding identically.
+ */
+static size_t decodeblock(const unsigned char *input, unsigned char *output, size_t oplen, size_t used){
+    size_t index = 0;
+    unsigned char decodedstr[ENCODERBLOCKLEN];
 
-    return rc;
+    decodedstr[0] = (unsigned char)(input[0] << 2 | input[1] >> 4);
+    decodedstr[1] = (unsigned char)(input[1] << 4 | input[2] >> 2);
+    decodedstr[2] = (unsigned char)(input[2] << 6 | input[3] >> 0);
+
+    for(index = 0; index < ENCODERBLOCKLEN && decodedstr[index] != 0 && used < oplen; index++)
+        output[used++] = decodedstr[index];
+
+    return used;
 }
 
-int Base64Decode(const char *input, char *output, int oplen){
-    char *charval = 0;
-    char decoderinput[ENCODERLEN + 1] = "";
-    char encodingtabe[TABLELEN + 1] = BASE64CHARSET;
-    int index = 0, asciival = 0, computeval = 0, iplen = 0, rc = 0;
-
-    iplen = strlen(input);
-    while(index < iplen){
-        asciival = (int)input[index];
-        if(asciival == PADDINGCHAR){
-            rc = decodeblock(decoderinput, output, oplen);
+/*
+ * Decodes at most oplen bytes out of iplen characters. Unknown characters are skipped and the first
+ * padding character ends the input. Returns the number of bytes written, output isn't terminated.
+ */
+size_t Base64Decode(const char *input, size_t iplen, unsigned char *output, size_t oplen){
+    const char *charval = 0;
+    unsigned char decoderinput[ENCODERLEN] = { 0 };
+    size_t index = 0, used = 0;
+    int computeval = 0;
+
+    for(index = 0; index < iplen; index++){
+        if(input[index] == PADDINGCHAR){
+            used = decodeblock(decoderinput, output, oplen, used);
             break;
-        }else{
-            charval = strchr(encodingtabe, asciival);
-            if(charval){
-                decoderinput[computeval] = charval - encodingtabe;
-                computeval = (computeval + 1) % 4;
-                if(computeval == 0){
-                    rc = decodeblock(decoderinput, output, oplen);
-                    decoderinput[0] = decoderinput[1] =
-                    decoderinput[2] = decoderinput[3] = 0;
-                }
+        }
+
+        charval = input[index] != '\0' ? strchr(encodingtable, input[index]) : 0;
+
+        if(charval){
+            decoderinput[computeval] = (unsigned char)(charval - encodingtable);
+            computeval = (computeval + 1) % ENCODERLEN;
+
+            if(computeval == 0){
+                used = decodeblock(decoderinput, output, oplen, used);
+                memset(decoderinput, 0, sizeof(decoderinput));
             }
         }
-        index++;
     }
 
-    return rc;
+    return used;
 }
 
-int encodeblock(char *input, char *output, int oplen){
-    int rc = 0, iplen = 0;
-    char encodedstr[ENCODERLEN + 1] = "";
-    char encodingtabe[TABLELEN + 1] = BASE64CHARSET;
-
-    iplen = strlen(input);
-    encodedstr[0] = encodingtabe[ input[0] >> 2 ];
-    encodedstr[1] = encodingtabe[ ((input[0] & 0x03) << 4) |
-                                  ((input[1] & 0xf0) >> 4) ];
-    encodedstr[2] = (iplen > 1 ? encodingtabe[ ((input[1] & 0x0f) << 2) |
-                                               ((input[2] & 0xc0) >> 6) ] : PADDINGCHAR);
-    encodedstr[3] = (iplen > 2 ? encodingtabe[ input[2] & 0x3f ] : PADDINGCHAR);
-    strncat(output, encodedstr, oplen-strlen(output));
-
-    return rc;
-}
+/*
+ * Encodes iplen bytes into output, which must hold ENCODEDLEN(iplen) + 1 characters.
+ * Returns the encoded length, output is '\0' terminated.
+ */
+size_t Base64Encode(const unsigned char *input, size_t iplen, char *output){
+    size_t ipindex = 0, opindex = 0, remaining = 0;
+    unsigned char b0 = 0, b1 = 0, b2 = 0;
 
-int Base64Encode(const char *input, char *output, int oplen){
-    int rc = 0;
-    int index = 0, ipindex = 0, iplen = 0;
-    char encoderinput[ENCODERBLOCKLEN + 1] = "";
-
-    iplen = strlen(input);
-    while(ipindex < iplen){
-        for(index = 0; index < 3; index++){
-            if(ipindex < iplen){
-                encoderinput[index] = input[ipindex];
-            }else{
-                encoderinput[index] = 0;
-            }
-            ipindex++;
-        }
-        rc = encodeblock(encoderinput, output, oplen);
+    for(ipindex = 0; ipindex < iplen; ipindex += ENCODERBLOCKLEN){
+        remaining = iplen - ipindex;
+        b0 = input[ipindex];
+        b1 = remaining > 1 ? input[ipindex + 1] : 0;
+        b2 = remaining > 2 ? input[ipindex + 2] : 0;
+
+        output[opindex++] = encodingtable[b0 >> 2];
+        output[opindex++] = encodingtable[((b0 & 0x03) << 4) | ((b1 & 0xf0) >> 4)];
+        output[opindex++] = remaining > 1 ? encodingtable[((b1 & 0x0f) << 2) | ((b2 & 0xc0) >> 6)] : PADDINGCHAR;
+        output[opindex++] = remaining > 2 ? encodingtable[b2 & 0x3f] : PADDINGCHAR;
     }
 
-    return rc;
-}
\ No newline at end of file
+    output[opindex] = '\0';
+    return opindex;
+}
@@ -3,6 +3,7 @@
  * http://knol2share.blogspot.com/2011/07/base64-encoding-and-decoding-in-c.html
  */
 
+#include <stddef.h>
 
 /* Macro definitions */
 #define TABLELEN        63
@@ -11,8 +12,9 @@
 #define ENCODEROPLEN    0
 #define ENCODERBLOCKLEN 3
 
+/* Encoded length of iplen bytes, without the terminating '\0' */
+#define ENCODEDLEN(iplen) ((((iplen) + ENCODERBLOCKLEN - 1) / ENCODERBLOCKLEN) * ENCODERLEN)
 
-int Base64Encode(const char *input, char *output, int oplen);
-int encodeblock(char *input, char *output, int oplen);
-int Base64Decode(const char *input, char *output, int oplen);
-int decodeblock(char *input, char *output, int oplen);
\ No newline at end of file
+
+size_t Base64Encode(const unsigned char *input, size_t iplen, char *output);
+size_t Base64Decode(const char *input, size_t iplen, unsigned char *output, size_t oplen);
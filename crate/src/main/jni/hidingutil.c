@@ -1,4 +1,5 @@
 #include <string.h>
+#include <stdlib.h>
 #include <jni.h>
 #include "Base64Util.h"
 #include "Base64Util.c"
@@ -7,152 +8,374 @@
 //#define Log(...) __android_log_print(ANDROID_LOG_DEBUG, "NDK", __VA_ARGS__)
 
 /* Macro definitions */
-#define CHARSIZE      1024
+#define KEYLEN        sizeof(passwordKey)
+
+/* The former fixed size buffers never encoded more than this many bytes in one piece */
+#define PIECELEN      (BUFFFERLEN / ENCODERLEN * ENCODERBLOCKLEN)
+
+/* Worst case of a forged value: every byte in a piece of its own, "XX==," */
+#define FORGEDLEN(length) ((size_t)(length) * (ENCODERLEN + 1))
 
 static unsigned char passwordKey[] = "K76NhYbhtxuRvaNSXqHQ2JcWnC6jKdyye57QG4KaRrHpJkGBkYmCjCFTbhtEGSUhY5FxhjfKupzrEyJntb8gzPqa8hGSQxcF5bBKuwZpyyvvnWJg8RpTBqrtFZ9xnjr3";
 
-void xor_value_with_key(const char* value, char* xorOutput)
+static void throw_new(JNIEnv* env, const char* className, const char* message)
 {
-    int i = 0;
-    while(value[i] != '\0')
-    {
-        int offset = i % sizeof(passwordKey);
-        xorOutput[i] = value[i] ^ passwordKey[offset];
-        i++;
-    }
+    jclass exceptionClass = (*env)->FindClass(env, className);
+
+    if(exceptionClass != NULL)
+        (*env)->ThrowNew(env, exceptionClass, message);
 }
 
-jstring hide(JNIEnv* env, jstring javaString)
+static int ensure_capacity(char** buffer, size_t* capacity, size_t required)
 {
-    const char *nativeString = (*env)->GetStringUTFChars(env, javaString, 0);
+    if(*capacity >= required)
+        return 1;
 
-    char xorOutput[BUFFFERLEN + 1] = "";
-    xor_value_with_key(nativeString, xorOutput);
+    char* grown = realloc(*buffer, required);
 
-    char encodedOutput[BUFFFERLEN + 1] = "";
+    if(grown == NULL)
+        return 0;
 
-    Base64Encode(xorOutput, encodedOutput, BUFFFERLEN);
+    *buffer = grown;
+    *capacity = required;
+    return 1;
+}
 
-    (*env)->ReleaseStringUTFChars(env, javaString, nativeString);
+/*
+ * Length of the next piece of value: it ends right before a byte equal to its key byte, since
+ * that XOR would be '\0', or after PIECELEN bytes.
+ */
+static size_t piece_length(const unsigned char* value, size_t length)
+{
+    size_t i = 0;
 
-    jstring text = (*env)->NewStringUTF(env, encodedOutput);
+    while(i < length && i < PIECELEN && (value[i] ^ passwordKey[i % KEYLEN]) != 0)
+        i++;
 
-    if(text == NULL)
-        return "";
+    return i;
+}
 
-    return text;
+/*
+ * XOR a piece with the key and Base64 encode it. Output must hold ENCODEDLEN(length) + 1 characters.
+ */
+static size_t mold_piece(const unsigned char* value, size_t length, char* output)
+{
+    unsigned char xorOutput[PIECELEN];
+    size_t i = 0;
+
+    for(i = 0; i < length; i++)
+        xorOutput[i] = value[i] ^ passwordKey[i % KEYLEN];
+
+    return Base64Encode(xorOutput, length, output);
 }
 
-jstring unhide(JNIEnv* env, jstring javaString)
+/*
+ * Base64 decode a piece and XOR it with the key, up to the first '\0'.
+ * Output must hold BUFFFERLEN bytes and isn't terminated.
+ */
+static size_t unmold_piece(const char* value, size_t length, unsigned char* output)
 {
-    const char *nativeString = (*env)->GetStringUTFChars(env, javaString, 0);
+    unsigned char decodedOutput[BUFFFERLEN];
+    size_t decodedLength = Base64Decode(value, length, decodedOutput, BUFFFERLEN);
+    size_t i = 0;
 
-    char decodedOutput[BUFFFERLEN + 1] = "";
+    while(i < decodedLength && (output[i] = decodedOutput[i] ^ passwordKey[i % KEYLEN]) != 0)
+        i++;
 
-    Base64Decode(nativeString, decodedOutput, BUFFFERLEN);
+    return i;
+}
 
-    char xorOutput[BUFFFERLEN + 1] = "";
-    xor_value_with_key(decodedOutput, xorOutput);
+/*
+ * Exact length forge_bytes will write for value, or -1 when value can't be forged.
+ */
+static long forged_length(const unsigned char* value, size_t length)
+{
+    long used = 0;
+    size_t piece = 0;
 
-    (*env)->ReleaseStringUTFChars(env, javaString, nativeString);
+    while(length > 0)
+    {
+        piece = piece_length(value, length);
 
-    jstring text = (*env)->NewStringUTF(env, xorOutput);
+        if(piece == 0)
+            return -1;
 
-    if(text == NULL)
-        return "";
+        used += ENCODEDLEN(piece) + 1;
+        value += piece;
+        length -= piece;
+    }
 
-    return text;
+    return used;
 }
 
-jstring Java_com_ownapp_blacksmith_Forger_mold(JNIEnv *env, jobject obj, jstring text)
+/*
+ * Forge value into comma terminated pieces, each molded from key offset 0.
+ * Output must hold FORGEDLEN(length) + 1 characters and isn't terminated.
+ * Returns the forged length, or -1 when a piece would be empty (value starts with the key's first byte).
+ */
+static long forge_bytes(const unsigned char* value, size_t length, char* output)
 {
-    if(text == NULL) text = "";
-    text = hide(env, text);
-    if(text == NULL) text = "";
-    return text;
+    long used = 0;
+    size_t piece = 0;
+
+    while(length > 0)
+    {
+        piece = piece_length(value, length);
+
+        if(piece == 0)
+            return -1;
+
+        used += mold_piece(value, piece, output + used);
+        output[used++] = ',';
+        value += piece;
+        length -= piece;
+    }
+
+    return used;
 }
 
-jstring Java_com_ownapp_blacksmith_Forger_unmold(JNIEnv *env, jobject obj, jstring text)
+/*
+ * Unmold every comma separated piece of value. Output must hold length bytes and isn't terminated.
+ */
+static size_t unforge_bytes(const char* value, size_t length, unsigned char* output)
 {
-    if(text == NULL) text = "";
-    text = unhide(env, text);
-    if(text == NULL) text = "";
-    return text;
+    size_t used = 0, start = 0, end = 0;
+
+    while(start < length)
+    {
+        end = start;
+
+        while(end < length && value[end] != ',')
+            end++;
+
+        if(end > start)
+            used += unmold_piece(value + start, end - start, output + used);
+
+        start = end + 1;
+    }
+
+    return used;
 }
 
-jstring Java_com_ownapp_blacksmith_Forger_forge(JNIEnv *env, jobject obj, jstring text)
+static jstring forge_string(JNIEnv* env, jstring text, char** buffer, size_t* capacity)
 {
     if(text == NULL)
-        return "";
+        return (*env)->NewStringUTF(env, "");
+
+    const char *nativeString = (*env)->GetStringUTFChars(env, text, 0);
+    size_t length = (size_t)(*env)->GetStringUTFLength(env, text);
 
-    jstring hiddenString = hide(env, text);
+    if(nativeString == NULL)
+        return NULL;
 
-    if(hiddenString == Java_com_ownapp_blacksmith_Forger_unmold(env, obj, hiddenString))
-        return hiddenString;
+    if(!ensure_capacity(buffer, capacity, FORGEDLEN(length) + 1))
+    {
+        (*env)->ReleaseStringUTFChars(env, text, nativeString);
+        throw_new(env, "java/lang/OutOfMemoryError", "Cannot allocate forge buffer");
+        return NULL;
+    }
+
+    long used = forge_bytes((const unsigned char*)nativeString, length, *buffer);
+
+    (*env)->ReleaseStringUTFChars(env, text, nativeString);
+
+    if(used < 0)
+    {
+        throw_new(env, "java/lang/IllegalArgumentException", "Text cannot be forged");
+        return NULL;
+    }
+
+    (*buffer)[used] = '\0';
+    return (*env)->NewStringUTF(env, *buffer);
+}
+
+static jstring unforge_string(JNIEnv* env, jstring text, char** buffer, size_t* capacity)
+{
+    if(text == NULL)
+        return (*env)->NewStringUTF(env, "");
 
-    const char *textCharPtr = (*env)->GetStringUTFChars(env, text, 0);
-    char textChar[CHARSIZE + 1] = "";
-    char resultChar[CHARSIZE + 1] = "";
+    const char *nativeString = (*env)->GetStringUTFChars(env, text, 0);
+    size_t length = (size_t)(*env)->GetStringUTFLength(env, text);
 
-    strcpy(textChar, textCharPtr);
+    if(nativeString == NULL)
+        return NULL;
 
-    while(strlen(textChar) != 0)
+    if(!ensure_capacity(buffer, capacity, length + 1))
     {
-        jstring hidden = Java_com_ownapp_blacksmith_Forger_mold(env, obj, (*env)->NewStringUTF(env, textChar));
-        const char *hiddenCharPtr = (*env)->GetStringUTFChars(env, hidden, 0);
+        (*env)->ReleaseStringUTFChars(env, text, nativeString);
+        throw_new(env, "java/lang/OutOfMemoryError", "Cannot allocate unforge buffer");
+        return NULL;
+    }
+
+    size_t used = unforge_bytes(nativeString, length, (unsigned char*)*buffer);
 
-        strcat(resultChar, hiddenCharPtr);
-        strcat(resultChar, ",");
+    (*env)->ReleaseStringUTFChars(env, text, nativeString);
 
-        jstring unhidden = Java_com_ownapp_blacksmith_Forger_unmold(env, obj, hidden);
-        const char *unhiddenCharPtr = (*env)->GetStringUTFChars(env, unhidden, 0);
-        char unhiddenChar[CHARSIZE + 1] = "";
+    (*buffer)[used] = '\0';
+    return (*env)->NewStringUTF(env, *buffer);
+}
 
-        strcpy(unhiddenChar, unhiddenCharPtr);
+static jobjectArray map_strings(
+    JNIEnv* env
+    , jobjectArray texts
+    , jstring (*transform)(JNIEnv*, jstring, char**, size_t*)
+)
+{
+    jsize count = (*env)->GetArrayLength(env, texts);
+    jclass stringClass = (*env)->FindClass(env, "java/lang/String");
+    jobjectArray result = (*env)->NewObjectArray(env, count, stringClass, NULL);
+    char* buffer = NULL;
+    size_t capacity = 0;
+    jsize i = 0;
+
+    if(result == NULL)
+        return NULL;
+
+    // One buffer for the whole batch, grown when a longer text shows up
+    for(i = 0; i < count; i++)
+    {
+        jstring text = (jstring)(*env)->GetObjectArrayElement(env, texts, i);
+        jstring transformed = transform(env, text, &buffer, &capacity);
 
-        int i = 0;
+        if(text != NULL)
+            (*env)->DeleteLocalRef(env, text);
 
-        while(strlen(textChar) != 0 && textChar[i] == unhiddenChar[i])
+        if(transformed == NULL)
         {
-            memmove(&textChar[i], &textChar[i + 1], strlen(textChar) - i);
-            memmove(&unhiddenChar[i], &unhiddenChar[i + 1], (strlen(unhiddenChar) - i) + 1);
+            free(buffer);
+            return NULL;
         }
 
-        (*env)->ReleaseStringUTFChars(env, hidden, hiddenCharPtr);
-        (*env)->ReleaseStringUTFChars(env, unhidden, unhiddenCharPtr);
+        (*env)->SetObjectArrayElement(env, result, i, transformed);
+        (*env)->DeleteLocalRef(env, transformed);
     }
 
-    (*env)->ReleaseStringUTFChars(env, text, textCharPtr);
+    free(buffer);
+    return result;
+}
+
+jstring Java_com_ownapp_blacksmith_NativeForger_mold(JNIEnv *env, jobject obj, jstring text)
+{
+    char encodedOutput[ENCODEDLEN(PIECELEN) + 1] = "";
+
+    if(text != NULL)
+    {
+        const char *nativeString = (*env)->GetStringUTFChars(env, text, 0);
+        size_t length = (size_t)(*env)->GetStringUTFLength(env, text);
+
+        if(nativeString == NULL)
+            return NULL;
 
-    return (*env)->NewStringUTF(env, resultChar);
+        mold_piece((const unsigned char*)nativeString, piece_length((const unsigned char*)nativeString, length), encodedOutput);
+        (*env)->ReleaseStringUTFChars(env, text, nativeString);
+    }
+
+    return (*env)->NewStringUTF(env, encodedOutput);
 }
 
-jstring Java_com_ownapp_blacksmith_Forger_unforge(JNIEnv *env, jobject obj, jstring text)
+jstring Java_com_ownapp_blacksmith_NativeForger_unmold(JNIEnv *env, jobject obj, jstring text)
 {
-    if(text == NULL)
-        return "";
+    unsigned char xorOutput[BUFFFERLEN + 1] = "";
 
-    const char *textCharPtr = (*env)->GetStringUTFChars(env, text, 0);
-    char textChar[CHARSIZE + 1] = "";
-    char resultChar[CHARSIZE + 1] = "";
+    if(text != NULL)
+    {
+        const char *nativeString = (*env)->GetStringUTFChars(env, text, 0);
+        size_t length = (size_t)(*env)->GetStringUTFLength(env, text);
+
+        if(nativeString == NULL)
+            return NULL;
 
-    strcpy(textChar, textCharPtr);
+        xorOutput[unmold_piece(nativeString, length, xorOutput)] = '\0';
+        (*env)->ReleaseStringUTFChars(env, text, nativeString);
+    }
 
-    char *tokenCharPtr = strtok(textChar, ",");
+    return (*env)->NewStringUTF(env, (const char*)xorOutput);
+}
+
+jstring Java_com_ownapp_blacksmith_NativeForger_forge(JNIEnv *env, jobject obj, jstring text)
+{
+    char* buffer = NULL;
+    size_t capacity = 0;
+    jstring result = forge_string(env, text, &buffer, &capacity);
+
+    free(buffer);
+    return result;
+}
 
-    while(tokenCharPtr != NULL)
+jstring Java_com_ownapp_blacksmith_NativeForger_unforge(JNIEnv *env, jobject obj, jstring text)
+{
+    char* buffer = NULL;
+    size_t capacity = 0;
+    jstring result = unforge_string(env, text, &buffer, &capacity);
+
+    free(buffer);
+    return result;
+}
+
+jobjectArray Java_com_ownapp_blacksmith_NativeForger_forgeAll(JNIEnv *env, jobject obj, jobjectArray texts)
+{
+    return map_strings(env, texts, forge_string);
+}
+
+jobjectArray Java_com_ownapp_blacksmith_NativeForger_unforgeAll(JNIEnv *env, jobject obj, jobjectArray texts)
+{
+    return map_strings(env, texts, unforge_string);
+}
+
+/*
+ * Returns the number of bytes written, or minus the required capacity when output is too small.
+ */
+jint Java_com_ownapp_blacksmith_NativeForger_forgeBuffer(
+    JNIEnv *env, jobject obj
+    , jobject input, jint inputOffset, jint inputLength
+    , jobject output, jint outputOffset, jint outputLength
+)
+{
+    unsigned char* inputAddress = (*env)->GetDirectBufferAddress(env, input);
+    char* outputAddress = (*env)->GetDirectBufferAddress(env, output);
+
+    if(inputAddress == NULL || outputAddress == NULL)
     {
-        jstring unhidden = Java_com_ownapp_blacksmith_Forger_unmold(env, obj, (*env)->NewStringUTF(env, tokenCharPtr));
-        const char *unhiddenCharPtr = (*env)->GetStringUTFChars(env, unhidden, 0);
+        throw_new(env, "java/lang/IllegalArgumentException", "Direct buffers are required");
+        return 0;
+    }
+
+    long required = forged_length(inputAddress + inputOffset, (size_t)inputLength);
 
-        strcat(resultChar, unhiddenCharPtr);
+    if(required < 0)
+    {
+        throw_new(env, "java/lang/IllegalArgumentException", "Input cannot be forged");
+        return 0;
+    }
 
-        (*env)->ReleaseStringUTFChars(env, unhidden, unhiddenCharPtr);
+    if(required > outputLength)
+        return (jint)-required;
 
-        tokenCharPtr = strtok(NULL, ",");
+    // forge_bytes terminates every piece with ',' so it never writes past the required length
+    return (jint)forge_bytes(inputAddress + inputOffset, (size_t)inputLength, outputAddress + outputOffset);
+}
+
+/*
+ * Returns the number of bytes written, or minus the required capacity when output is too small.
+ */
+jint Java_com_ownapp_blacksmith_NativeForger_unforgeBuffer(
+    JNIEnv *env, jobject obj
+    , jobject input, jint inputOffset, jint inputLength
+    , jobject output, jint outputOffset, jint outputLength
+)
+{
+    char* inputAddress = (*env)->GetDirectBufferAddress(env, input);
+    unsigned char* outputAddress = (*env)->GetDirectBufferAddress(env, output);
+
+    if(inputAddress == NULL || outputAddress == NULL)
+    {
+        throw_new(env, "java/lang/IllegalArgumentException", "Direct buffers are required");
+        return 0;
     }
 
-    (*env)->ReleaseStringUTFChars(env, text, textCharPtr);
+    // Unforged bytes never outnumber the forged characters
+    if(inputLength > outputLength)
+        return -inputLength;
 
-    return (*env)->NewStringUTF(env, resultChar);
-}
\ No newline at end of file
+    return (jint)unforge_bytes(inputAddress + inputOffset, (size_t)inputLength, outputAddress + outputOffset);
+}
@@ -5,11 +5,19 @@
 
 // underscores are reserved characters in JNI referring to package boundaries.
 extern "C"
-jstring Java_com_ownapp_blacksmith_Forger_mold(JNIEnv* env, jobject obj, jstring _receiver);
+jstring Java_com_ownapp_blacksmith_NativeForger_mold(JNIEnv* env, jobject obj, jstring _receiver);
 extern "C"
-jstring Java_com_ownapp_blacksmith_Forger_unmold(JNIEnv* env, jobject obj, jstring _receiver);
+jstring Java_com_ownapp_blacksmith_NativeForger_unmold(JNIEnv* env, jobject obj, jstring _receiver);
 extern "C"
-jstring Java_com_ownapp_blacksmith_Forger_forge(JNIEnv* env, jobject obj, jstring _receiver);
+jstring Java_com_ownapp_blacksmith_NativeForger_forge(JNIEnv* env, jobject obj, jstring _receiver);
 extern "C"
-jstring Java_com_ownapp_blacksmith_Forger_unforge(JNIEnv* env, jobject obj, jstring _receiver);
+jstring Java_com_ownapp_blacksmith_NativeForger_unforge(JNIEnv* env, jobject obj, jstring _receiver);
+extern "C"
+jobjectArray Java_com_ownapp_blacksmith_NativeForger_forgeAll(JNIEnv* env, jobject obj, jobjectArray texts);
+extern "C"
+jobjectArray Java_com_ownapp_blacksmith_NativeForger_unforgeAll(JNIEnv* env, jobject obj, jobjectArray texts);
+extern "C"
+jint Java_com_ownapp_blacksmith_NativeForger_forgeBuffer(JNIEnv* env, jobject obj, jobject input, jint inputOffset, jint inputLength, jobject output, jint outputOffset, jint outputLength);
+extern "C"
+jint Java_com_ownapp_blacksmith_NativeForger_unforgeBuffer(JNIEnv* env, jobject obj, jobject input, jint inputOffset, jint inputLength, jobject output, jint outputOffset, jint outputLength);
 #endif //__HIDINGUTIL_H__
\ No newline at end of file
@@ -0,0 +1,168 @@
+package com.ownapp.blacksmith
+
+import android.content.Context
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.`when`
+import kotlin.concurrent.thread
+
+class CounterCrateTest
+{
+	// Fails the next commits, like a full disk
+	private class FailingPreferences: MemoryPreferences()
+	{
+		var failures = 0
+
+		override fun edit() = super.edit().also {
+			if(failures > 0)
+			{
+				failures--
+				throw IllegalStateException("Disk full")
+			}
+		}
+	}
+
+	private lateinit var preferences: FailingPreferences
+	private lateinit var context: Context
+
+	@Before
+	fun setUp()
+	{
+		preferences = FailingPreferences()
+		installCrateStorage(preferences)
+
+		context = mock(Context::class.java)
+		`when`(context.applicationContext).thenReturn(context)
+	}
+
+	private fun counter(flushIntervalMillis: Long = 60_000L) = CounterCrate(context, "count", flushIntervalMillis = flushIntervalMillis)
+
+	@Test
+	fun add_countsInMemoryOnly()
+	{
+		val counter = counter()
+
+		repeat(5) { counter.increment() }
+		counter += 10L
+
+		assertEquals(15L, counter.value)
+		assertFalse(preferences.contains("count"))
+	}
+
+	@Test
+	fun flush_persistsSumInOneWrite()
+	{
+		val counter = counter()
+		val commits = preferences.commitCount
+
+		repeat(100) { counter.increment() }
+		counter.flush()
+
+		assertEquals(commits + 1, preferences.commitCount)
+		assertEquals(100L, preferences.getLong("count", 0L))
+		assertEquals(100L, counter.value)
+
+		// Nothing pending, nothing written
+		counter.flush()
+		assertEquals(commits + 1, preferences.commitCount)
+	}
+
+	@Test
+	fun flush_addsToStoredValue()
+	{
+		val counter = counter()
+
+		counter += 3L
+		counter.flush()
+		counter.decrement()
+		counter.flush()
+
+		assertEquals(2L, preferences.getLong("count", 0L))
+		assertEquals(2L, counter(flushIntervalMillis = 1L).value)
+	}
+
+	@Test
+	fun failedFlush_keepsIncrements()
+	{
+		val counter = counter()
+
+		counter += 4L
+		preferences.failures = 1
+		counter.flush()
+
+		assertFalse(preferences.contains("count"))
+		assertEquals(4L, counter.value)
+
+		counter.flush()
+
+		assertEquals(4L, preferences.getLong("count", 0L))
+		assertEquals(4L, counter.value)
+	}
+
+	@Test
+	fun setValue_dropsPendingIncrements()
+	{
+		val counter = counter()
+
+		counter += 4L
+		counter.value = 1L
+		counter.flush()
+
+		assertEquals(1L, preferences.getLong("count", 0L))
+		assertEquals(1L, counter.value)
+	}
+
+	@Test
+	fun increments_areFlushedAfterInterval()
+	{
+		val counter = counter(flushIntervalMillis = 10L)
+
+		counter.increment()
+
+		val deadline = System.currentTimeMillis() + 5_000L
+
+		while(!preferences.contains("count") && System.currentTimeMillis() < deadline)
+			Thread.sleep(10L)
+
+		assertEquals(1L, preferences.getLong("count", 0L))
+	}
+
+	@Test
+	fun cratesFlush_flushesEveryCounter()
+	{
+		val first = CounterCrate(context, "first", flushIntervalMillis = 60_000L)
+		val second = CounterCrate(context, "second", flushIntervalMillis = 60_000L)
+
+		first.increment()
+		second += 2L
+		Crates.flush()
+
+		assertEquals(1L, preferences.getLong("first", 0L))
+		assertEquals(2L, preferences.getLong("second", 0L))
+	}
+
+	@Test
+	fun twoCounters_onOneKeyKeepEveryIncrement()
+	{
+		val counters = listOf(counter(), counter())
+		val threads = counters.map { counter ->
+			thread {
+				repeat(1_000) {
+					counter.increment()
+
+					if(it % 10 == 0)
+						counter.flush()
+				}
+
+				counter.flush()
+			}
+		}
+
+		threads.forEach { it.join() }
+
+		assertEquals(2_000L, preferences.getLong("count", 0L))
+	}
+}
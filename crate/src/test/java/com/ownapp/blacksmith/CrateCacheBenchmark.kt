@@ -0,0 +1,115 @@
+package com.ownapp.blacksmith
+
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.security.SecureRandom
+import javax.crypto.Cipher
+import javax.crypto.KeyGenerator
+import javax.crypto.spec.GCMParameterSpec
+
+/**
+ * Read latency of a crate key with and without [CrateCache], on preferences that AES-GCM decrypt
+ * every value they return the way EncryptedSharedPreferences does.
+ */
+class CrateCacheBenchmark
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Constant
+	//---------------------------------------------------------------------------------------------------*/
+	companion object
+	{
+		private const val KEYS = 100
+		private const val WARMUP_ROUNDS = 100
+		private const val ROUNDS = 300
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Class
+	//---------------------------------------------------------------------------------------------------*/
+	private class SealedValuePreferences: MemoryPreferences()
+	{
+		private val key = KeyGenerator.getInstance("AES").apply { init(256) }.generateKey()
+		private val random = SecureRandom()
+
+		override fun encode(value: Any): Any
+		{
+			val iv = ByteArray(12).also { random.nextBytes(it) }
+			val cipher = Cipher.getInstance("AES/GCM/NoPadding").apply { init(Cipher.ENCRYPT_MODE, key, GCMParameterSpec(128, iv)) }
+
+			return Sealed(value.javaClass, iv, cipher.doFinal(value.toString().toByteArray()))
+		}
+
+		override fun decode(stored: Any): Any
+		{
+			stored as Sealed
+			val cipher = Cipher.getInstance("AES/GCM/NoPadding").apply { init(Cipher.DECRYPT_MODE, key, GCMParameterSpec(128, stored.iv)) }
+			val text = String(cipher.doFinal(stored.bytes))
+
+			return when(stored.type)
+			{
+				Int::class.javaObjectType -> text.toInt()
+				else -> text
+			}
+		}
+
+		private class Sealed(val type: Class<*>, val iv: ByteArray, val bytes: ByteArray)
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	private val preferences = SealedValuePreferences()
+	private val keys = Array(KEYS) { "crate_$it" }
+
+	// Written once per measurement so the JIT can't drop the reads feeding it
+	@Volatile
+	private var blackhole = 0
+
+
+	@Before
+	fun setUp()
+	{
+		CrateCache.clear()
+		CrateCache.attach(preferences)
+
+		with(preferences.edit()) {
+			keys.forEachIndexed { index, key -> putInt(key, index) }
+			commit()
+		}
+	}
+
+	@Test
+	fun readLatency_cachedAgainstUncached()
+	{
+		val uncached = measure { key -> preferences.readStored(key, Int::class.javaObjectType) }
+		val cached = measure { key -> CrateCache.read(key) { preferences.readStored(key, Int::class.javaObjectType) } }
+
+		println("Crate read: uncached %.0f ns/op, cached %.0f ns/op".format(uncached, cached))
+
+		keys.forEachIndexed { index, key -> assertEquals(index, CrateCache.read(key) { null }) }
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Private
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * @return Nanoseconds per read of a key
+	 */
+	private inline fun measure(read: (String) -> Any?): Double
+	{
+		var sink = 0
+
+		repeat(WARMUP_ROUNDS) { keys.forEach { sink += read(it).hashCode() } }
+
+		val start = System.nanoTime()
+		repeat(ROUNDS) { keys.forEach { sink += read(it).hashCode() } }
+		val elapsed = System.nanoTime() - start
+
+		blackhole = sink
+		return elapsed.toDouble() / (ROUNDS * KEYS)
+	}
+}
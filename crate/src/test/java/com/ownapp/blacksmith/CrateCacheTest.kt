@@ -0,0 +1,223 @@
+package com.ownapp.blacksmith
+
+import androidx.core.content.edit
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import kotlin.concurrent.thread
+
+class CrateCacheTest
+{
+	private lateinit var preferences: MemoryPreferences
+
+	@Before
+	fun setUp()
+	{
+		preferences = MemoryPreferences()
+		CrateCache.clear()
+		CrateCache.attach(preferences)
+	}
+
+	private fun read(key: String, defaultValue: Any?): Any? = CrateCache.read(key) { preferences.readStored(key, defaultValue?.javaClass) }
+
+	private fun write(key: String, value: Any)
+	{
+		CrateCache.write(key, value)
+		preferences.edit { putValue(key, value) }
+	}
+
+	private fun android.content.SharedPreferences.Editor.putValue(key: String, value: Any)
+	{
+		when(value)
+		{
+			is Int -> putInt(key, value)
+			is Boolean -> putBoolean(key, value)
+			else -> putString(key, value as String)
+		}
+	}
+
+	@Test
+	fun read_isServedFromCacheAfterFirstRead()
+	{
+		preferences.edit { putInt("count", 3) }
+
+		assertEquals(3, read("count", 0))
+		val reads = preferences.readCount
+
+		assertEquals(3, read("count", 0))
+		assertEquals(reads, preferences.readCount)
+	}
+
+	@Test
+	fun read_cachesAbsentKey()
+	{
+		assertNull(read("missing", 0))
+		val reads = preferences.readCount
+
+		assertNull(read("missing", 0))
+		assertEquals(reads, preferences.readCount)
+	}
+
+	@Test
+	fun externalChange_isReadThroughAgain()
+	{
+		preferences.edit { putString("name", "old") }
+		assertEquals("old", read("name", ""))
+
+		preferences.edit { putString("name", "new") }
+
+		assertEquals("new", read("name", ""))
+	}
+
+	@Test
+	fun ownWrite_isNotReadThroughAgain()
+	{
+		write("name", "mine")
+		val reads = preferences.readCount
+
+		assertEquals("mine", read("name", ""))
+		assertEquals(reads, preferences.readCount)
+	}
+
+	@Test
+	fun invalidate_readsThroughAgain()
+	{
+		preferences.edit { putString("name", "old") }
+		assertEquals("old", read("name", ""))
+
+		// A write bypassing the listener, e.g. a migration
+		preferences.unregisterOnSharedPreferenceChangeListener(CrateCache)
+		preferences.edit { putString("name", "migrated") }
+		CrateCache.invalidate("name")
+
+		assertEquals("migrated", read("name", ""))
+	}
+
+	@Test
+	fun unchangedOwnWrite_doesNotSwallowNextExternalChange()
+	{
+		preferences.edit { putString("token", "a") }
+		assertEquals("a", read("token", ""))
+
+		// Same value, the preferences don't call back for it
+		write("token", "a")
+
+		preferences.edit { putString("token", "b") }
+
+		assertEquals("b", read("token", ""))
+	}
+
+	@Test
+	fun clearedPreferences_dropEveryValue()
+	{
+		write("name", "mine")
+
+		preferences.edit { clear() }
+
+		assertNull(read("name", ""))
+	}
+
+	@Test
+	fun warm_readsEveryKeyInOnePass()
+	{
+		preferences.edit {
+			putInt("a", 1)
+			putString("b", "2")
+		}
+
+		CrateCache.warm(preferences)
+		val reads = preferences.readCount
+
+		assertEquals(1, read("a", 0))
+		assertEquals("2", read("b", ""))
+		assertNull(read("c", ""))
+		assertTrue(CrateCache.isWarm)
+		assertEquals(reads, preferences.readCount)
+	}
+
+	@Test
+	fun nullDefault_readsStoredType()
+	{
+		preferences.edit { putBoolean("flag", true) }
+
+		assertEquals(true, read("flag", null))
+
+		// The cached value is the stored one, not a String made from the default
+		assertEquals(true, read("flag", false))
+	}
+
+	@Test
+	fun mismatchedDefault_cachesStoredValue()
+	{
+		preferences.edit { putInt("count", 3) }
+
+		assertEquals(3, read("count", ""))
+		assertEquals(3, read("count", 0))
+	}
+
+	@Test
+	fun typedRead_decryptsOnlyItsKey()
+	{
+		preferences.edit {
+			repeat(10) { putInt("other$it", it) }
+			putBoolean("flag", true)
+		}
+		val reads = preferences.readCount
+
+		assertEquals(true, CrateCache.read("flag") { preferences.readStored("flag", Boolean::class.javaObjectType) })
+		assertEquals(reads + 1, preferences.readCount)
+	}
+
+	@Test
+	fun slowRead_doesNotOverwriteNewerWrite()
+	{
+		preferences.edit { putString("name", "old") }
+
+		val isReading = CountDownLatch(1)
+		val canFinish = CountDownLatch(1)
+		val reader = thread {
+			CrateCache.read("name") {
+				val stored = preferences.readStored("name", String::class.java)
+				isReading.countDown()
+				canFinish.await()
+				stored
+			}
+		}
+
+		isReading.await()
+		write("name", "new")
+		canFinish.countDown()
+		reader.join()
+
+		assertEquals("new", read("name", ""))
+	}
+
+	@Test
+	fun slowRead_doesNotOverwriteLaterChange()
+	{
+		preferences.edit { putString("name", "old") }
+		assertEquals("old", read("name", ""))
+		CrateCache.invalidate("name")
+
+		val isReading = CountDownLatch(1)
+		val canFinish = CountDownLatch(1)
+		val reader = thread {
+			CrateCache.read("name") {
+				val stored = preferences.readStored("name", String::class.java)
+				isReading.countDown()
+				canFinish.await()
+				stored
+			}
+		}
+
+		isReading.await()
+		preferences.edit { putString("name", "changed") }
+		canFinish.countDown()
+		reader.join()
+
+		assertEquals("changed", read("name", ""))
+	}
+}
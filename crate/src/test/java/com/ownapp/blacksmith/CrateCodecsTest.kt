@@ -0,0 +1,90 @@
+package com.ownapp.blacksmith
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.DataInput
+import java.io.DataInputStream
+import java.io.DataOutput
+import java.io.DataOutputStream
+import java.io.EOFException
+
+class CrateCodecsTest
+{
+	private data class Profile(val id: Long, val name: String, val tags: List<String>)
+
+	private object ProfileCodec: CrateCodec<Profile>
+	{
+		private val tags = CrateCodecs.list(CrateCodecs.STRING)
+
+		override fun encode(value: Profile, output: DataOutput)
+		{
+			output.writeLong(value.id)
+			CrateCodecs.STRING.encode(value.name, output)
+			tags.encode(value.tags, output)
+		}
+
+		override fun decode(input: DataInput) = Profile(input.readLong(), CrateCodecs.STRING.decode(input), tags.decode(input))
+	}
+
+	private fun <T: Any> CrateCodec<T>.encoded(value: T): ByteArray = ByteArrayOutputStream().also { bytes ->
+		DataOutputStream(bytes).use { encode(value, it) }
+	}.toByteArray()
+
+	private fun <T: Any> CrateCodec<T>.roundTrip(value: T): T = DataInputStream(encoded(value).inputStream()).use { decode(it) }
+
+	@Test
+	fun primitives_roundTrip()
+	{
+		assertEquals(Int.MIN_VALUE, CrateCodecs.INT.roundTrip(Int.MIN_VALUE))
+		assertEquals(Long.MAX_VALUE, CrateCodecs.LONG.roundTrip(Long.MAX_VALUE))
+		assertEquals(1.5f, CrateCodecs.FLOAT.roundTrip(1.5f))
+		assertEquals(-0.25, CrateCodecs.DOUBLE.roundTrip(-0.25), 0.0)
+		assertEquals(true, CrateCodecs.BOOLEAN.roundTrip(true))
+	}
+
+	@Test
+	fun string_isNotLimitedTo64Kb()
+	{
+		val text = "é".repeat(70_000)
+
+		assertEquals(text, CrateCodecs.STRING.roundTrip(text))
+		assertEquals("", CrateCodecs.STRING.roundTrip(""))
+	}
+
+	@Test
+	fun arrays_roundTrip()
+	{
+		assertArrayEquals(intArrayOf(1, -2, 3), CrateCodecs.INT_ARRAY.roundTrip(intArrayOf(1, -2, 3)))
+		assertArrayEquals(longArrayOf(), CrateCodecs.LONG_ARRAY.roundTrip(longArrayOf()))
+	}
+
+	@Test
+	fun collections_roundTripInOrder()
+	{
+		val list = listOf(3L, 1L, 2L)
+		val set = linkedSetOf("c", "a", "b")
+		val map = linkedMapOf("b" to listOf(1), "a" to listOf(2, 3))
+
+		assertEquals(list, CrateCodecs.list(CrateCodecs.LONG).roundTrip(list))
+		assertEquals(set.toList(), CrateCodecs.set(CrateCodecs.STRING).roundTrip(set).toList())
+		assertEquals(map.toList(), CrateCodecs.map(CrateCodecs.STRING, CrateCodecs.list(CrateCodecs.INT)).roundTrip(map).toList())
+	}
+
+	@Test
+	fun customCodec_roundTrip()
+	{
+		val profile = Profile(7L, "Ann", listOf("admin", "beta"))
+
+		assertEquals(profile, ProfileCodec.roundTrip(profile))
+	}
+
+	@Test(expected = EOFException::class)
+	fun truncatedInput_throws()
+	{
+		val bytes = CrateCodecs.list(CrateCodecs.LONG).encoded(listOf(1L, 2L))
+
+		DataInputStream(bytes.copyOf(bytes.size - 1).inputStream()).use { CrateCodecs.list(CrateCodecs.LONG).decode(it) }
+	}
+}
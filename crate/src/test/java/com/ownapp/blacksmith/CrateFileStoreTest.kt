@@ -0,0 +1,175 @@
+package com.ownapp.blacksmith
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import javax.crypto.Cipher
+import javax.crypto.SecretKey
+import javax.crypto.spec.GCMParameterSpec
+import javax.crypto.spec.SecretKeySpec
+
+class CrateFileStoreTest
+{
+	companion object
+	{
+		private const val NAME = "crates"
+		private val key = SecretKeySpec(ByteArray(32) { it.toByte() }, "AES")
+	}
+
+	// The Keystore isn't there on the JVM, the data key is a fixed one instead
+	private class TestStore(directory: File): CrateFileStore(directory, NAME)
+	{
+		override fun loadDataKey(): SecretKey = key
+	}
+
+	@get:Rule
+	val folder = TemporaryFolder()
+
+	private val logFile: File
+		get() = File(folder.root, "$NAME.log")
+
+	private fun newStore() = TestStore(folder.root)
+
+	/**
+	 * A sealed record the way [CrateFileStore] writes one, holding [plain].
+	 */
+	private fun seal(plain: ByteArray): ByteArray
+	{
+		val iv = ByteArray(12) { 7 }
+		val cipher = Cipher.getInstance("AES/GCM/NoPadding").apply {
+			init(Cipher.ENCRYPT_MODE, key, GCMParameterSpec(128, iv))
+			updateAAD(NAME.toByteArray())
+		}
+
+		return iv + cipher.doFinal(plain)
+	}
+
+	private fun record(plain: ByteArray): ByteArray
+	{
+		val sealed = seal(plain)
+
+		return ByteArrayOutputStream().also { bytes ->
+			DataOutputStream(bytes).use {
+				it.writeInt(sealed.size)
+				it.write(sealed)
+			}
+		}.toByteArray()
+	}
+
+	// Valid framing, but a version this store doesn't know, e.g. written by a newer release
+	private fun newerVersionRecord(): ByteArray = record(ByteArrayOutputStream().also { bytes ->
+		DataOutputStream(bytes).use {
+			it.writeBoolean(false)
+			it.writeInt(99)
+			it.writeInt(0)
+		}
+	}.toByteArray())
+
+	@Test
+	fun load_replaysLogInOrder()
+	{
+		with(newStore()) {
+			append(false, mapOf("a" to 1, "b" to "x"))
+			append(false, mapOf("a" to null, "c" to true, "d" to 5L))
+			append(false, mapOf("e" to 1.5f, "f" to setOf("s", "t")))
+		}
+
+		assertEquals(
+			mapOf("b" to "x", "c" to true, "d" to 5L, "e" to 1.5f, "f" to setOf("s", "t"))
+			, newStore().load()
+		)
+	}
+
+	@Test
+	fun load_clearRecordDropsEarlierValues()
+	{
+		with(newStore()) {
+			append(false, mapOf("a" to 1))
+			append(true, mapOf("b" to 2))
+		}
+
+		assertEquals(mapOf("b" to 2), newStore().load())
+	}
+
+	@Test
+	fun compact_foldsLogIntoSnapshot()
+	{
+		with(newStore()) {
+			repeat(10) { append(false, mapOf("count" to it)) }
+			compact(mapOf("count" to 9, "name" to "n"))
+		}
+
+		assertFalse(logFile.exists())
+
+		with(newStore()) {
+			assertEquals(mapOf("count" to 9, "name" to "n"), load())
+			append(false, mapOf("count" to 10))
+		}
+
+		assertEquals(mapOf("count" to 10, "name" to "n"), newStore().load())
+	}
+
+	@Test
+	fun load_dropsTornTail()
+	{
+		newStore().append(false, mapOf("a" to 1))
+		val validLength = logFile.length()
+
+		FileOutputStream(logFile, true).use { it.write(record("torn".toByteArray()).copyOf(20)) }
+
+		assertEquals(mapOf("a" to 1), newStore().load())
+		assertEquals(validLength, logFile.length())
+	}
+
+	@Test
+	fun load_unreadableRecordKeepsSnapshotAndEarlierRecords()
+	{
+		with(newStore()) {
+			append(false, mapOf("a" to 1))
+			compact(mapOf("a" to 1))
+			append(false, mapOf("b" to 2))
+		}
+
+		val validLength = logFile.length()
+
+		FileOutputStream(logFile, true).use { it.write(newerVersionRecord()) }
+		newStore().append(false, mapOf("c" to 3))
+
+		assertEquals(mapOf("a" to 1, "b" to 2), newStore().load())
+		assertEquals(validLength, logFile.length())
+		assertTrue(File(folder.root, "$NAME.log.corrupt").length() > 0)
+
+		// Usable again, and the corrupt record isn't hit on the next start
+		newStore().append(false, mapOf("d" to 4))
+		assertEquals(mapOf("a" to 1, "b" to 2, "d" to 4), newStore().load())
+	}
+
+	@Test
+	fun load_unreadableSnapshotStartsEmpty()
+	{
+		with(newStore()) {
+			compact(mapOf("a" to 1))
+			append(false, mapOf("b" to 2))
+		}
+
+		File(folder.root, "$NAME.snapshot").writeBytes(seal(ByteArrayOutputStream().also { bytes ->
+			DataOutputStream(bytes).use {
+				it.writeInt(99)
+				it.writeInt(0)
+			}
+		}.toByteArray()))
+
+		assertEquals(emptyMap<String, Any>(), newStore().load())
+		assertTrue(File(folder.root, "$NAME.snapshot.corrupt").exists())
+
+		newStore().append(false, mapOf("c" to 3))
+		assertEquals(mapOf("c" to 3), newStore().load())
+	}
+}
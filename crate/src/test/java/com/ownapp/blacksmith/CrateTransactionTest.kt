@@ -0,0 +1,154 @@
+package com.ownapp.blacksmith
+
+import android.content.Context
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.`when`
+
+class CrateTransactionTest
+{
+	private lateinit var preferences: MemoryPreferences
+
+	@Before
+	fun setUp()
+	{
+		preferences = MemoryPreferences()
+		installCrateStorage(preferences)
+
+		with(preferences.edit()) {
+			putInt("count", 1)
+			putString("name", "stored")
+			commit()
+		}
+	}
+
+	// What Context.save does for a crate
+	private fun save(key: String, value: Any)
+	{
+		CrateCache.write(key, value)
+		assertTrue(CrateBatch.offer(key, value))
+	}
+
+	private fun read(key: String, defaultValue: Any): Any? = CrateCache.read(key) { preferences.readStored(key, defaultValue?.javaClass) }
+
+	@Test
+	fun crates_commitsAllWritesOnce()
+	{
+		val commits = preferences.commitCount
+
+		crates {
+			save("count", 2)
+			save("name", "batched")
+
+			// Visible before the commit
+			assertEquals(2, read("count", 0))
+		}
+
+		assertEquals(commits + 1, preferences.commitCount)
+		assertEquals(2, preferences.getInt("count", 0))
+		assertEquals("batched", preferences.getString("name", null))
+	}
+
+	@Test
+	fun crates_nestedBlocksCommitWithOutermost()
+	{
+		crates {
+			save("count", 2)
+			crates { save("name", "nested") }
+
+			assertEquals("stored", preferences.getString("name", null))
+		}
+
+		assertEquals("nested", preferences.getString("name", null))
+	}
+
+	@Test
+	fun crates_throwingBlockPersistsNothing()
+	{
+		val commits = preferences.commitCount
+
+		val result = runCatching {
+			crates {
+				save("count", 2)
+				throw IllegalStateException()
+			}
+		}
+
+		assertTrue(result.exceptionOrNull() is IllegalStateException)
+		assertEquals(commits, preferences.commitCount)
+		assertEquals(1, preferences.getInt("count", 0))
+
+		// The cache no longer serves the dropped value
+		assertEquals(1, read("count", 0))
+	}
+
+	@Test
+	fun crates_caughtNestedFailureRollsBackBatch()
+	{
+		crates {
+			save("name", "outer")
+
+			try
+			{
+				crates {
+					save("count", 2)
+					throw IllegalStateException()
+				}
+			}
+			catch(e: IllegalStateException)
+			{
+			}
+		}
+
+		assertEquals(1, preferences.getInt("count", 0))
+		assertEquals("stored", preferences.getString("name", null))
+		assertEquals("stored", read("name", ""))
+	}
+
+	@Test
+	fun crates_batchAfterFailureCommits()
+	{
+		runCatching { crates { throw IllegalStateException() } }
+
+		crates { save("count", 3) }
+
+		assertEquals(3, preferences.getInt("count", 0))
+	}
+
+	@Test
+	fun crate_rewritesValueRolledBack()
+	{
+		val context = mock(Context::class.java)
+		`when`(context.applicationContext).thenReturn(context)
+		val crate = IntCrate(context, "count")
+
+		runCatching {
+			crates {
+				crate.value = 2
+				throw IllegalStateException()
+			}
+		}
+
+		// The crate must not take the dropped value for the stored one
+		crate.value = 2
+
+		assertEquals(2, preferences.getInt("count", 0))
+	}
+
+	@Test
+	fun crate_rewritesValueChangedByOtherInstance()
+	{
+		val context = mock(Context::class.java)
+		`when`(context.applicationContext).thenReturn(context)
+		val crate = IntCrate(context, "count")
+
+		crate.value = 2
+		IntCrate(context, "count").value = 3
+		crate.value = 2
+
+		assertEquals(2, preferences.getInt("count", 0))
+	}
+}
@@ -0,0 +1,122 @@
+package com.ownapp.blacksmith
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.InputStream
+import java.nio.BufferOverflowException
+import java.nio.ByteBuffer
+
+class JvmForgerTest
+{
+	companion object
+	{
+		private const val FOX = "The quick brown fox jumps over the lazy dog. "
+
+		// Forged by hidingutil.c compiled for the host, through NativeForger
+		private val nativeVectors = listOf(
+			"" to ""
+			, "hello" to "I1JaIgc=,"
+			, "token:abc123" to "P1hdKwZjAwoXSUdh,"
+			, "héllo wörld" to "I/SfIgQ2Qh+3zgc+Eg==,"
+			, "日本語のテキスト" to "raCTqPT1isLqm/T8leLIsNrcq9OLqeDf,"
+
+			// Supplementary characters and \u0000 in modified UTF-8, the bytes JNI hands over
+			, "key 🔑 emoji" to "IFJPboX534XA6VU3Gw4kOg==,"
+			, "a\u0000b" to "Kve2LA==,"
+
+			// '7' equals the key byte at its index, so it starts a new piece
+			, "a7b" to "Kg==,fFU=,"
+
+			// Longer than a piece
+			, FOX.repeat(5) to "H19TbhksCwsfWBcgGRYgcz4eMHFYPw4nHWNZHC4WWQ0NUBc9Jk4yQTYdL15qPy8nSygYKgkoZjYQBwMrZzU6EHlfMxUYGUYkAxUIUjERL04YA0IeWjQeBhZIEzs0WBIz,"
+				+ "IlRdbgorDR8aWBM9DkEkJjUBO3FdPAYlTjdeD2sIGAMcFVM+IBprNToXaAE/AiQpSzsfLB0tZjINEFQvMj4lG3laMB0aShIjEFAWEz8=,"
+				+ "MhdSIQ93QjwcHVUjAwgtOHgTOj5FJEMxATsW,"
+				+ "IUJbPht5DR4RClUmHgRuPzkLMXFWJQR5Tg==,"
+		)
+	}
+
+	// Hands out at most chunk bytes per read, so pieces and separators straddle the reads
+	private class ChunkedInputStream(bytes: ByteArray, private val chunk: Int): InputStream()
+	{
+		private val input = ByteArrayInputStream(bytes)
+
+		override fun read(): Int = input.read()
+
+		override fun read(buffer: ByteArray, offset: Int, length: Int): Int = input.read(buffer, offset, minOf(length, chunk))
+	}
+
+	private fun forgeStream(bytes: ByteArray, chunk: Int = bytes.size.coerceAtLeast(1)): ByteArray =
+		ByteArrayOutputStream().also { JvmForger.forgeStream(ChunkedInputStream(bytes, chunk), it) }.toByteArray()
+
+	private fun unforgeStream(bytes: ByteArray, chunk: Int = bytes.size.coerceAtLeast(1)): ByteArray =
+		ByteArrayOutputStream().also { JvmForger.unforgeStream(ChunkedInputStream(bytes, chunk), it) }.toByteArray()
+
+	@Test
+	fun forge_matchesNativeVectors()
+	{
+		nativeVectors.forEach { (plain, forged) ->
+			assertEquals(forged, JvmForger.forge(plain))
+			assertEquals(plain, JvmForger.unforge(forged))
+		}
+	}
+
+	@Test
+	fun forgeAll_forgesEachText()
+	{
+		val forged = JvmForger.forgeAll(arrayOf("a", null, "日本"))
+
+		assertArrayEquals(arrayOf("Kg==,", "", "raCTqPT1,"), forged)
+		assertArrayEquals(arrayOf("a", "", "日本"), JvmForger.unforgeAll(forged))
+	}
+
+	@Test
+	fun stream_matchesStringForge()
+	{
+		// UTF-8 and modified UTF-8 agree on text without \u0000 or supplementary characters
+		val text = "héllo 日本 " + FOX.repeat(400)
+		val forged = JvmForger.forge(text).toByteArray(Charsets.ISO_8859_1)
+
+		assertArrayEquals(forged, forgeStream(text.toByteArray()))
+		assertEquals(text, String(unforgeStream(forged)))
+	}
+
+	@Test
+	fun stream_matchesStringForgeAtBufferBoundaries()
+	{
+		// Around a piece and around the 8KB stream buffers
+		for(length in listOf(1, 95, 96, 97, 8_191, 8_192, 8_193, 16_385))
+		{
+			val text = FOX.repeat(length / FOX.length + 1).take(length)
+			val forged = JvmForger.forge(text).toByteArray(Charsets.ISO_8859_1)
+
+			for(chunk in listOf(1, 7, 96, 8_192))
+			{
+				assertArrayEquals("length $length, chunk $chunk", forged, forgeStream(text.toByteArray(), chunk))
+				assertEquals("length $length, chunk $chunk", text, String(unforgeStream(forged, chunk)))
+			}
+		}
+	}
+
+	@Test
+	fun buffer_matchesStringForge()
+	{
+		Forger.backend = Forger.Backend.JVM
+
+		val bytes = FOX.repeat(3).toByteArray()
+		val output = ByteBuffer.allocate(Forger.forgedCapacity(bytes.size))
+		val written = Forger.forge(ByteBuffer.wrap(bytes), output)
+
+		assertEquals(JvmForger.forge(FOX.repeat(3)), String(output.array(), 0, written, Charsets.ISO_8859_1))
+	}
+
+	@Test(expected = BufferOverflowException::class)
+	fun buffer_tooSmallOverflows()
+	{
+		Forger.backend = Forger.Backend.JVM
+
+		Forger.forge(ByteBuffer.wrap(FOX.toByteArray()), ByteBuffer.allocate(FOX.length))
+	}
+}
@@ -0,0 +1,114 @@
+package com.ownapp.blacksmith
+
+import android.content.SharedPreferences
+
+/**
+ * In-memory [SharedPreferences] that, like the framework one, only calls back for keys whose value
+ * actually changed.
+ */
+open class MemoryPreferences: SharedPreferences
+{
+	//**--------------------------------------------------------------------------------------------------
+	//*      Variable
+	//---------------------------------------------------------------------------------------------------*/
+	protected val values = HashMap<String, Any>()
+	private val listeners = LinkedHashSet<SharedPreferences.OnSharedPreferenceChangeListener>()
+
+	var readCount = 0
+		private set
+
+	var commitCount = 0
+		private set
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Override
+	//---------------------------------------------------------------------------------------------------*/
+	override fun getAll(): MutableMap<String, *> = HashMap(values).also { readCount += values.size }
+	override fun getString(key: String, defValue: String?): String? = read(key) ?: defValue
+	override fun getStringSet(key: String, defValues: MutableSet<String>?): MutableSet<String>? = throw UnsupportedOperationException()
+	override fun getInt(key: String, defValue: Int): Int = read(key) ?: defValue
+	override fun getLong(key: String, defValue: Long): Long = read(key) ?: defValue
+	override fun getFloat(key: String, defValue: Float): Float = read(key) ?: defValue
+	override fun getBoolean(key: String, defValue: Boolean): Boolean = read(key) ?: defValue
+	override fun contains(key: String): Boolean = values.containsKey(key)
+	override fun edit(): SharedPreferences.Editor = Editor()
+
+	override fun registerOnSharedPreferenceChangeListener(listener: SharedPreferences.OnSharedPreferenceChangeListener)
+	{
+		listeners.add(listener)
+	}
+
+	override fun unregisterOnSharedPreferenceChangeListener(listener: SharedPreferences.OnSharedPreferenceChangeListener)
+	{
+		listeners.remove(listener)
+	}
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Protected
+	//---------------------------------------------------------------------------------------------------*/
+	/**
+	 * Decode the stored form of a value, e.g. to make reads as expensive as the encrypted preferences.
+	 */
+	protected open fun decode(stored: Any): Any = stored
+
+	protected open fun encode(value: Any): Any = value
+
+
+	//**--------------------------------------------------------------------------------------------------
+	//*      Private
+	//---------------------------------------------------------------------------------------------------*/
+	// Throws ClassCastException on a type mismatch, the same as the framework preferences
+	@Suppress("UNCHECKED_CAST")
+	private fun <T> read(key: String): T?
+	{
+		readCount++
+		return values[key]?.let { decode(it) as T }
+	}
+
+	private inner class Editor: SharedPreferences.Editor
+	{
+		private val changes = LinkedHashMap<String, Any?>()
+		private var isCleared = false
+
+		override fun putString(key: String, value: String?) = apply { changes[key] = value }
+		override fun putStringSet(key: String, values: MutableSet<String>?) = throw UnsupportedOperationException()
+		override fun putInt(key: String, value: Int) = apply { changes[key] = value }
+		override fun putLong(key: String, value: Long) = apply { changes[key] = value }
+		override fun putFloat(key: String, value: Float) = apply { changes[key] = value }
+		override fun putBoolean(key: String, value: Boolean) = apply { changes[key] = value }
+		override fun remove(key: String) = apply { changes[key] = null }
+		override fun clear() = apply { isCleared = true }
+
+		override fun commit(): Boolean
+		{
+			val changed = ArrayList<String?>()
+			commitCount++
+
+			if(isCleared && values.isNotEmpty())
+			{
+				values.clear()
+				changed.add(null)
+			}
+
+			changes.forEach { (key, value) ->
+				val previous = values[key]?.let { decode(it) }
+
+				if(previous != value)
+				{
+					if(value == null) values.remove(key) else values[key] = encode(value)
+					changed.add(key)
+				}
+			}
+
+			changed.forEach { key -> listeners.toList().forEach { it.onSharedPreferenceChanged(this@MemoryPreferences, key) } }
+			return true
+		}
+
+		override fun apply()
+		{
+			commit()
+		}
+	}
+}